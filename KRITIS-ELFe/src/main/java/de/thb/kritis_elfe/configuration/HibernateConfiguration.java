@@ -0,0 +1,21 @@
+package de.thb.kritis_elfe.configuration;
+
+import org.springframework.boot.autoconfigure.orm.jpa.HibernatePropertiesCustomizer;
+import org.springframework.context.annotation.Configuration;
+
+import java.util.Map;
+
+/**
+ * Enables the jdbc batching of hibernate, so many updated entities are written with few roundtrips.
+ * The values can be overwritten with spring.jpa.properties.* in the application.properties.
+ */
+@Configuration
+public class HibernateConfiguration implements HibernatePropertiesCustomizer {
+
+    @Override
+    public void customize(Map<String, Object> hibernateProperties) {
+        hibernateProperties.putIfAbsent("hibernate.jdbc.batch_size", 50);
+        hibernateProperties.putIfAbsent("hibernate.order_updates", true);
+        hibernateProperties.putIfAbsent("hibernate.order_inserts", true);
+    }
+}
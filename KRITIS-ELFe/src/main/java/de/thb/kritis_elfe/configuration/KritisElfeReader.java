@@ -3,6 +3,9 @@ package de.thb.kritis_elfe.configuration;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Class for defining all important data of the Webapplication KRITIS-ELFe
  */
@@ -11,6 +14,10 @@ import org.springframework.stereotype.Component;
 public class KritisElfeReader {
     private String helpPath;
     private String url;
+    private String reportCachePath;
+    private long reportCacheSize = 200;
+    private boolean reportCacheEager;
+    private List<String> importCommentRemovals = new ArrayList<>();
 
     public String getHelpPath() {
         return helpPath;
@@ -27,4 +34,42 @@ public class KritisElfeReader {
     public void setUrl(String url) {
         this.url = url;
     }
+
+    public String getReportCachePath() {
+        return reportCachePath;
+    }
+
+    public void setReportCachePath(String reportCachePath) {
+        this.reportCachePath = reportCachePath;
+    }
+
+    /**
+     * @return maximal size of all cached report documents in megabytes
+     */
+    public long getReportCacheSize() {
+        return reportCacheSize;
+    }
+
+    public void setReportCacheSize(long reportCacheSize) {
+        this.reportCacheSize = reportCacheSize;
+    }
+
+    public boolean isReportCacheEager() {
+        return reportCacheEager;
+    }
+
+    public void setReportCacheEager(boolean reportCacheEager) {
+        this.reportCacheEager = reportCacheEager;
+    }
+
+    /**
+     * @return regular expressions of additional template texts, which are removed from the comments of imported files
+     */
+    public List<String> getImportCommentRemovals() {
+        return importCommentRemovals;
+    }
+
+    public void setImportCommentRemovals(List<String> importCommentRemovals) {
+        this.importCommentRemovals = importCommentRemovals;
+    }
 }
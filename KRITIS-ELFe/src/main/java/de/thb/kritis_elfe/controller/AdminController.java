@@ -3,9 +3,11 @@ package de.thb.kritis_elfe.controller;
 import de.thb.kritis_elfe.configuration.KritisElfeReader;
 import de.thb.kritis_elfe.controller.form.RessortsForm;
 import de.thb.kritis_elfe.entity.*;
+import de.thb.kritis_elfe.repository.questionnaire.QuestionnaireStatus;
 import de.thb.kritis_elfe.service.*;
 import de.thb.kritis_elfe.service.Exceptions.EmptyFileException;
 import de.thb.kritis_elfe.service.Exceptions.WrongContentTypeException;
+import de.thb.kritis_elfe.service.questionnaire.QuestionnaireAutosaveService;
 import de.thb.kritis_elfe.service.questionnaire.QuestionnaireService;
 import lombok.AllArgsConstructor;
 import org.springframework.stereotype.Controller;
@@ -21,10 +23,12 @@ import java.util.List;
 public class AdminController {
     private final ReportService reportService;
     private final QuestionnaireService questionnaireService;
+    private final QuestionnaireAutosaveService questionnaireAutosaveService;
     private final RessortService ressortService;
     private final FederalStateService federalStateService;
     private final SectorService sectorService;
     private final DocumentService documentService;
+    private final ReportDocumentService reportDocumentService;
     private final KritisElfeReader kritisElfeReader;
 
     @GetMapping("/report-kontrolle")
@@ -35,8 +39,9 @@ public class AdminController {
 
         Report newReport = new Report();
         model.addAttribute("newReport", newReport);
-        model.addAttribute("federalStatesWithNotUpdatedQuest", questionnaireService.getFederalStatesWithNotUpdatedQuestionnaire());
-        model.addAttribute("ressortsWithNotUpdatedQuest", questionnaireService.getRessortsWithNotUpdatedQuestionnaire());
+        List<QuestionnaireStatus> questionnaireStatuses = questionnaireService.getLiveQuestionnaireStatuses();
+        model.addAttribute("federalStatesWithNotUpdatedQuest", questionnaireService.getFederalStatesWithNotUpdatedQuestionnaire(questionnaireStatuses));
+        model.addAttribute("ressortsWithNotUpdatedQuest", questionnaireService.getRessortsWithNotUpdatedQuestionnaire(questionnaireStatuses));
         model.addAttribute("ressorts", ressortService.getAllRessorts());
         model.addAttribute("federalStates", federalStateService.getAllFederalStates());
         return "report/report_control";
@@ -44,7 +49,10 @@ public class AdminController {
 
     @PostMapping("/report-kontrolle")
     public String postNewReport(@ModelAttribute("snapName") Report newReport) {
+        questionnaireAutosaveService.flushAll();
         reportService.createReport(newReport);
+        // the documents are created in the background, the redirect doesn't wait for them
+        reportDocumentService.cacheReportDocuments(newReport);
         return "redirect:/report-kontrolle";
     }
 
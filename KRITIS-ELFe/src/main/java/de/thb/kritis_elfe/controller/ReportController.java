@@ -5,8 +5,8 @@ import de.thb.kritis_elfe.entity.Sector;
 import de.thb.kritis_elfe.service.DocumentService;
 import de.thb.kritis_elfe.service.Exceptions.EntityDoesNotExistException;
 import de.thb.kritis_elfe.service.FederalStateService;
+import de.thb.kritis_elfe.service.ReportDocumentService;
 import de.thb.kritis_elfe.service.SectorService;
-import de.thb.kritis_elfe.service.helper.report.BranchReportValueAccessor;
 import de.thb.kritis_elfe.service.helper.report.SectorReportValueAccessor;
 import de.thb.kritis_elfe.service.ReportService;
 import lombok.AllArgsConstructor;
@@ -25,6 +25,7 @@ public class ReportController {
     private final SectorService sectorService;
     private final FederalStateService federalStateService;
     private final DocumentService documentService;
+    private final ReportDocumentService reportDocumentService;
 
 
     @GetMapping("/report")
@@ -50,11 +51,7 @@ public class ReportController {
 
         documentService.setWordDownloadResponseHeader(response, report + ".docx");
 
-        SectorReportValueAccessor sectorReportValueAccessor = reportService.createSectorReportValueAccessor(report);
-
-        documentService.createReportWordDocument(response.getOutputStream(), sectorService.getAllSectors(),
-                federalStateService.getAllFederalStates(), sectorReportValueAccessor, report);
-
+        reportDocumentService.writeReportWordDocument(response.getOutputStream(), report);
     }
 
     @GetMapping("report/sektor/download")
@@ -69,10 +66,18 @@ public class ReportController {
         }
 
         documentService.setWordDownloadResponseHeader(response, "Sektorreport für den Sektor " + sector.get() + " vom Report " + report + ".docx");
-        BranchReportValueAccessor branchReportValueAccessor = reportService.createSectorBranchReportValueAccessor(report, sector.get());
 
-        documentService.createSectorReportWordDocument(response.getOutputStream(), sector.get(), federalStateService.getAllFederalStates(),
-                branchReportValueAccessor);
+        reportDocumentService.writeSectorReportWordDocument(response.getOutputStream(), report, sector.get());
+    }
+
+    @GetMapping("report/sektoren/download")
+    public void downloadSectorReports(@RequestParam(value = "reportId", required = false) Long reportId,
+                                      HttpServletResponse response) throws IOException {
+        Report report = reportService.getReportFromIdWithDefault(reportId);
+
+        documentService.setZipDownloadResponseHeader(response, "Sektorreports vom Report " + report + ".zip");
+
+        reportDocumentService.writeSectorReportsZip(response.getOutputStream(), report);
     }
 
 }
\ No newline at end of file
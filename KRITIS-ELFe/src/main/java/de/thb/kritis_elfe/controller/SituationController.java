@@ -1,27 +1,43 @@
 package de.thb.kritis_elfe.controller;
 
+import de.thb.kritis_elfe.controller.form.FilledScenarioChange;
+import de.thb.kritis_elfe.controller.form.QuestionnaireChangesForm;
 import de.thb.kritis_elfe.entity.User;
 import de.thb.kritis_elfe.entity.questionnaire.Questionnaire;
+import de.thb.kritis_elfe.enums.ImportJobStatus;
 import de.thb.kritis_elfe.service.*;
 import de.thb.kritis_elfe.service.Exceptions.AccessDeniedException;
 import de.thb.kritis_elfe.service.Exceptions.EntityDoesNotExistException;
+import de.thb.kritis_elfe.service.Exceptions.ImportJobRejectedException;
+import de.thb.kritis_elfe.service.Exceptions.QuestionnaireChangedException;
 import de.thb.kritis_elfe.service.helper.SectorChangeDetector;
+import de.thb.kritis_elfe.service.questionnaire.AutosavedVersion;
+import de.thb.kritis_elfe.service.questionnaire.QuestionnaireAutosaveService;
+import de.thb.kritis_elfe.service.questionnaire.QuestionnaireImportJob;
+import de.thb.kritis_elfe.service.questionnaire.QuestionnaireImportJobService;
 import de.thb.kritis_elfe.service.questionnaire.QuestionnaireService;
 import lombok.AllArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
+import org.springframework.web.bind.WebDataBinder;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLEncoder;
+import java.util.concurrent.CompletableFuture;
 
 @Controller
 @AllArgsConstructor
 public class SituationController {
 
     private final QuestionnaireService questionnaireService;
+    private final QuestionnaireAutosaveService questionnaireAutosaveService;
+    private final QuestionnaireImportJobService questionnaireImportJobService;
     private final UserService userService;
 
     @GetMapping("/lagebericht")
@@ -33,8 +49,24 @@ public class SituationController {
     }
 
     @GetMapping("/lagebericht/{name}")
-    public String showQuestionnaireForm(@PathVariable String name, Authentication authentication, Model model) throws AccessDeniedException, EntityDoesNotExistException {
-        Questionnaire questionnaire = questionnaireService.getQuestionnaireFromCreatorsName(name, userService.getUserByUsername(authentication.getName()));
+    public String showQuestionnaireForm(@PathVariable String name, @RequestParam(value = "import", required = false) String importJobId,
+                                        Authentication authentication, Model model) throws AccessDeniedException, EntityDoesNotExistException {
+        User user = userService.getUserByUsername(authentication.getName());
+        Questionnaire questionnaire = questionnaireService.getQuestionnaireFromCreatorsName(name, user);
+
+        //show the result of the finished import job like the one of a direct upload
+        if(importJobId != null){
+            try {
+                QuestionnaireImportJob importJob = questionnaireImportJobService.getImportJob(importJobId, name, user);
+                if(importJob.getStatus() == ImportJobStatus.FINISHED){
+                    questionnaireImportJobService.addImportResult(model, importJob.getErrorFileNames());
+                }else if(importJob.getStatus() == ImportJobStatus.FAILED){
+                    model.addAttribute("importFailed", true);
+                }
+            } catch (EntityDoesNotExistException e) {
+                // the job expired, the imported values are shown anyway
+            }
+        }
 
         model.addAttribute("questionnaire", questionnaire);
         model.addAttribute("sectorChangeDetector", new SectorChangeDetector());
@@ -43,17 +75,56 @@ public class SituationController {
         return "situation";
     }
 
+    @InitBinder("questionnaireChangesForm")
+    public void initQuestionnaireChangesFormBinder(WebDataBinder binder){
+        // a questionnaire of a federal state has more rows than the default limit of 256
+        binder.setAutoGrowCollectionLimit(10000);
+    }
+
     @PostMapping("/lagebericht/form/{name}")
-    public String submitQuestionnaire(@ModelAttribute("questionnaire") Questionnaire questionnaire,
+    public String submitQuestionnaire(@ModelAttribute("questionnaireChangesForm") QuestionnaireChangesForm questionnaireChangesForm,
                                       @PathVariable String name, Authentication authentication) throws AccessDeniedException, EntityDoesNotExistException, UnsupportedEncodingException {
-        questionnaireService.saveQuestionnaireFromForm(questionnaire, name, userService.getUserByUsername(authentication.getName()));
+        questionnaireAutosaveService.flush(questionnaireChangesForm.getId());
+        try {
+            questionnaireService.saveQuestionnaireChangesFromForm(questionnaireChangesForm, name, userService.getUserByUsername(authentication.getName()));
+        } catch (QuestionnaireChangedException e) {
+            return "redirect:/lagebericht/" + URLEncoder.encode(name, "UTF-8") + "?changed_error";
+        }
         return "redirect:/lagebericht/" + URLEncoder.encode(name, "UTF-8") + "?success";
     }
 
+    // answered after the change is written, so the page only marks written changes as saved
+    @PostMapping("/lagebericht/autosave/{name}")
+    @ResponseBody
+    public CompletableFuture<AutosavedVersion> autosaveFilledScenario(@RequestParam("questionnaireId") long questionnaireId, @RequestBody FilledScenarioChange filledScenarioChange,
+                                                                      @PathVariable String name, Authentication authentication) throws AccessDeniedException, EntityDoesNotExistException {
+        return questionnaireAutosaveService.addChange(questionnaireId, name, userService.getUserByUsername(authentication.getName()), filledScenarioChange);
+    }
+
+    @PostMapping("/lagebericht/import/{name}")
+    public ResponseEntity<QuestionnaireImportJob> startImportJob(@RequestParam("files") MultipartFile[] files, @RequestParam("questionnaireId") long questionnaireId,
+                                                                 @PathVariable String name, Authentication authentication) throws AccessDeniedException, EntityDoesNotExistException, IOException {
+        try {
+            return ResponseEntity.ok(questionnaireImportJobService.startImportJob(files, questionnaireId, name, userService.getUserByUsername(authentication.getName())));
+        } catch (ImportJobRejectedException e) {
+            // the page asks the user to wait for the running import
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).build();
+        }
+    }
+
+    @GetMapping("/lagebericht/import/{name}/{jobId}")
+    @ResponseBody
+    public QuestionnaireImportJob getImportJob(@PathVariable String name, @PathVariable String jobId, Authentication authentication) throws EntityDoesNotExistException {
+        return questionnaireImportJobService.getImportJob(jobId, name, userService.getUserByUsername(authentication.getName()));
+    }
+
     @PostMapping("/lagebericht/{name}")
     public String submitFromFiles(@RequestParam("files") MultipartFile[] files, @PathVariable String name,
-                                  Authentication authentication, Model model) throws AccessDeniedException {
-        Questionnaire questionnaire = questionnaireService.saveQuestionnaireFromFiles(files, name, userService.getUserByUsername(authentication.getName()), model);
+                                  Authentication authentication, Model model) throws AccessDeniedException, EntityDoesNotExistException {
+        questionnaireAutosaveService.flushAll();
+        User user = userService.getUserByUsername(authentication.getName());
+        questionnaireImportJobService.importFiles(files, name, user, model);
+        Questionnaire questionnaire = questionnaireService.getQuestionnaireFromCreatorsName(name, user);
         model.addAttribute("questionnaire", questionnaire);
         model.addAttribute("sectorChangeDetector", new SectorChangeDetector());
         model.addAttribute("name", name);
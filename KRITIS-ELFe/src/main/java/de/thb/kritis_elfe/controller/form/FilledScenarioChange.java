@@ -0,0 +1,28 @@
+package de.thb.kritis_elfe.controller.form;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Changed value and comment of a single FilledScenario, the value is null for scenarios without selection.
+ * The autosave also sends the saved value and comment the change is based on, to detect changes of other users.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class FilledScenarioChange {
+    private long id;
+    private Short value;
+    private String comment;
+    private Short savedValue;
+    private String savedComment;
+
+    public FilledScenarioChange(long id, Short value, String comment){
+        this.id = id;
+        this.value = value;
+        this.comment = comment;
+    }
+}
@@ -0,0 +1,22 @@
+package de.thb.kritis_elfe.controller.form;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Contains only the changed FilledScenarios of a questionnaire and the version of the questionnaire they are based on.
+ */
+@Getter
+@Setter
+@AllArgsConstructor
+@NoArgsConstructor
+public class QuestionnaireChangesForm {
+    private long id;
+    private long version;
+    private List<FilledScenarioChange> filledScenarios = new ArrayList<>();
+}
@@ -26,6 +26,11 @@ public class Report {
 
     private LocalDateTime date;
 
+    // the report values are compared to this report, it is null if there was no previous report
+    private Long comparedReportId;
+
+    private boolean reportValuesComputed;
+
     @OneToMany(mappedBy = "report")
     private List<Questionnaire> questionnaires;
 
@@ -0,0 +1,43 @@
+package de.thb.kritis_elfe.entity;
+
+import de.thb.kritis_elfe.enums.ValueChangedType;
+import lombok.*;
+
+import javax.persistence.*;
+
+/**
+ * A ReportBranchValue is the precomputed value of a branch in a Report, compared to the previous report.
+ * The federalState and the ressort are null for the value of all ressorts (Bund).
+ * A row with a ressort only records that the ressort reports on the branch, its value is not used.
+ */
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@Entity
+@Table
+public class ReportBranchValue {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private long id;
+
+    @ManyToOne
+    @JoinColumn(name = "report_id", nullable = false)
+    private Report report;
+
+    @ManyToOne
+    @JoinColumn(name = "branch_id", nullable = false)
+    private Branch branch;
+
+    @ManyToOne
+    private FederalState federalState;
+
+    @ManyToOne
+    private Ressort ressort;
+
+    private short value;
+
+    @Enumerated(EnumType.ORDINAL)
+    private ValueChangedType valueChangedType;
+}
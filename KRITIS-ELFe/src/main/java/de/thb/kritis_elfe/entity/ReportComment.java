@@ -0,0 +1,52 @@
+package de.thb.kritis_elfe.entity;
+
+import lombok.*;
+
+import javax.persistence.*;
+import javax.validation.constraints.Size;
+
+/**
+ * A ReportComment is a comment of a branch and scenario in a Report, highlighted against the previous report.
+ * The comment is split into parts with the given lengths, which are alternately highlighted and not,
+ * beginning with a highlighted one if firstPartYellow is true.
+ * Either the federalState or the ressort is set.
+ */
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@Entity
+@Table
+public class ReportComment {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private long id;
+
+    @ManyToOne
+    @JoinColumn(name = "report_id", nullable = false)
+    private Report report;
+
+    @ManyToOne
+    @JoinColumn(name = "branch_id", nullable = false)
+    private Branch branch;
+
+    @ManyToOne
+    private Scenario scenario;
+
+    @ManyToOne
+    private FederalState federalState;
+
+    @ManyToOne
+    private Ressort ressort;
+
+    @Column(length = 1000)
+    @Size(max = 10000)
+    private String comment;
+
+    // comma separated lengths of the comment parts
+    @Column(length = 4000)
+    private String commentPartLengths;
+
+    private boolean firstPartYellow;
+}
@@ -0,0 +1,39 @@
+package de.thb.kritis_elfe.entity;
+
+import de.thb.kritis_elfe.enums.ValueChangedType;
+import lombok.*;
+
+import javax.persistence.*;
+
+/**
+ * A ReportSectorValue is one precomputed cell of the sector report matrix of a Report.
+ * The federalState is null for the cell of all ressorts (Bund).
+ */
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+@Setter
+@Entity
+@Table
+public class ReportSectorValue {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private long id;
+
+    @ManyToOne
+    @JoinColumn(name = "report_id", nullable = false)
+    private Report report;
+
+    @ManyToOne
+    @JoinColumn(name = "sector_id", nullable = false)
+    private Sector sector;
+
+    @ManyToOne
+    private FederalState federalState;
+
+    private short value;
+
+    @Enumerated(EnumType.ORDINAL)
+    private ValueChangedType valueChangedType;
+}
@@ -26,6 +26,9 @@ public class Ressort {
     @ManyToMany()
     private List<Branch> branches;
 
+    // increased with every change of the branches, so the questionnaires only have to be checked after a change
+    private long branchesVersion;
+
     @OneToMany(mappedBy = "ressort")
     List<User> users;
 
@@ -3,6 +3,7 @@ package de.thb.kritis_elfe.entity.questionnaire;
 import de.thb.kritis_elfe.entity.Branch;
 import lombok.*;
 import org.hibernate.Hibernate;
+import org.hibernate.annotations.BatchSize;
 
 import javax.persistence.*;
 import java.util.List;
@@ -29,6 +30,7 @@ public class BranchQuestionnaire {
 
     @OneToMany(mappedBy = "branchQuestionnaire")
     @OrderBy("scenario ASC")
+    @BatchSize(size = 50)
     private List<FilledScenario> filledScenarios;
 
     @Override
@@ -5,6 +5,7 @@ import de.thb.kritis_elfe.entity.Ressort;
 import de.thb.kritis_elfe.entity.Report;
 import lombok.*;
 import org.hibernate.Hibernate;
+import org.hibernate.annotations.BatchSize;
 
 import javax.persistence.*;
 import java.time.LocalDateTime;
@@ -28,6 +29,12 @@ public class Questionnaire {
 
     private boolean updated;
 
+    // true as long as nothing was changed since the last report, so the next report can share the content
+    private boolean unchangedSinceReport;
+
+    // increased with every change of the content, used to detect concurrent changes of the same questionnaire
+    private long version;
+
     @ManyToOne
     private Report report;
 
@@ -37,10 +44,28 @@ public class Questionnaire {
     @ManyToOne
     private Ressort ressort;
 
+    // branches version of the ressort, for which the branches of this questionnaire were checked last
+    private Long branchesVersion;
+
+    // report questionnaire holding the content of this unchanged report questionnaire,
+    // the content moves to the oldest sharing questionnaire when its report is deleted
+    @ManyToOne
+    private Questionnaire sharedQuestionnaire;
+
     @OneToMany(mappedBy = "questionnaire")
     @OrderBy("branch.id ASC")
+    @BatchSize(size = 50)
     private List<BranchQuestionnaire> branchQuestionnaires;
 
+    /**
+     * Returns the questionnaire which holds the BranchQuestionnaires of this one.
+     * This is the shared questionnaire for report questionnaires which share the content of an older report.
+     * @return
+     */
+    public Questionnaire getContentQuestionnaire(){
+        return sharedQuestionnaire == null ? this : sharedQuestionnaire;
+    }
+
     public String getDateAsString(){
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("dd.MM.yyyy");
         DateTimeFormatter formatter2 = DateTimeFormatter.ofPattern("HH:mm");
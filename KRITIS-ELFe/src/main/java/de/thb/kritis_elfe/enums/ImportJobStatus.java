@@ -0,0 +1,5 @@
+package de.thb.kritis_elfe.enums;
+
+public enum ImportJobStatus {
+    WAITING, RUNNING, FINISHED, FAILED
+}
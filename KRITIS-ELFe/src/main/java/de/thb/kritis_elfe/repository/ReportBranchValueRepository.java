@@ -0,0 +1,27 @@
+package de.thb.kritis_elfe.repository;
+
+import de.thb.kritis_elfe.entity.Report;
+import de.thb.kritis_elfe.entity.ReportBranchValue;
+import de.thb.kritis_elfe.entity.Sector;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.RepositoryDefinition;
+
+import java.util.List;
+
+@RepositoryDefinition(domainClass = ReportBranchValue.class, idClass = Long.class)
+public interface ReportBranchValueRepository extends CrudRepository<ReportBranchValue, Long> {
+
+    @Query("select rbv from ReportBranchValue rbv join fetch rbv.branch b left join fetch rbv.federalState left join fetch rbv.ressort " +
+            "where rbv.report = ?1 and b.sector = ?2")
+    List<ReportBranchValue> findAllByReportAndSector(Report report, Sector sector);
+
+    @Query("select rbv from ReportBranchValue rbv join fetch rbv.branch left join fetch rbv.federalState left join fetch rbv.ressort " +
+            "where rbv.report = ?1")
+    List<ReportBranchValue> findAllByReport(Report report);
+
+    @Modifying
+    @Query("delete from ReportBranchValue rbv where rbv.report = ?1")
+    void deleteByReport(Report report);
+}
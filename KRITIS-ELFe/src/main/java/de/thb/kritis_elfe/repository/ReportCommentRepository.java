@@ -0,0 +1,27 @@
+package de.thb.kritis_elfe.repository;
+
+import de.thb.kritis_elfe.entity.Report;
+import de.thb.kritis_elfe.entity.ReportComment;
+import de.thb.kritis_elfe.entity.Sector;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.RepositoryDefinition;
+
+import java.util.List;
+
+@RepositoryDefinition(domainClass = ReportComment.class, idClass = Long.class)
+public interface ReportCommentRepository extends CrudRepository<ReportComment, Long> {
+
+    @Query("select rc from ReportComment rc join fetch rc.branch b left join fetch rc.scenario " +
+            "left join fetch rc.federalState left join fetch rc.ressort where rc.report = ?1 and b.sector = ?2")
+    List<ReportComment> findAllByReportAndSector(Report report, Sector sector);
+
+    @Query("select rc from ReportComment rc join fetch rc.branch left join fetch rc.scenario " +
+            "left join fetch rc.federalState left join fetch rc.ressort where rc.report = ?1")
+    List<ReportComment> findAllByReport(Report report);
+
+    @Modifying
+    @Query("delete from ReportComment rc where rc.report = ?1")
+    void deleteByReport(Report report);
+}
@@ -1,9 +1,11 @@
 package de.thb.kritis_elfe.repository;
 
 import de.thb.kritis_elfe.entity.Report;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.RepositoryDefinition;
 
+import javax.persistence.LockModeType;
 import java.util.List;
 import java.util.Optional;
 
@@ -16,4 +18,9 @@ public interface ReportRepository extends CrudRepository<Report, Long> {
     Optional<Report> findById(Long id);
     Report findTopByIdLessThanOrderByIdDesc(long oldReportId);
 
+    // blocks other changes of the report until the end of the transaction
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    Report findLockedById(long id);
+    boolean existsByIdAndReportValuesComputedIsTrueAndComparedReportId(long id, Long comparedReportId);
+
 }
@@ -0,0 +1,20 @@
+package de.thb.kritis_elfe.repository;
+
+import de.thb.kritis_elfe.entity.Report;
+import de.thb.kritis_elfe.entity.ReportSectorValue;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.RepositoryDefinition;
+
+import java.util.List;
+
+@RepositoryDefinition(domainClass = ReportSectorValue.class, idClass = Long.class)
+public interface ReportSectorValueRepository extends CrudRepository<ReportSectorValue, Long> {
+
+    List<ReportSectorValue> findAllByReport(Report report);
+
+    @Modifying
+    @Query("delete from ReportSectorValue rsv where rsv.report = ?1")
+    void deleteByReport(Report report);
+}
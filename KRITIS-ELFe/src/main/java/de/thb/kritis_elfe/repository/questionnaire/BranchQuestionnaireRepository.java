@@ -1,10 +1,55 @@
 package de.thb.kritis_elfe.repository.questionnaire;
 
 import de.thb.kritis_elfe.entity.questionnaire.BranchQuestionnaire;
+import de.thb.kritis_elfe.entity.questionnaire.Questionnaire;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.RepositoryDefinition;
 
+import java.util.List;
+
 @RepositoryDefinition(domainClass = BranchQuestionnaire.class, idClass = Long.class)
 public interface BranchQuestionnaireRepository extends CrudRepository<BranchQuestionnaire, Long> {
 
+    // initializes the FilledScenarios of all BranchQuestionnaires of the questionnaire
+    @Query("select distinct bq from BranchQuestionnaire bq left join fetch bq.filledScenarios fs left join fetch fs.scenario s " +
+            "where bq.questionnaire = ?1 order by bq.id, s.id")
+    List<BranchQuestionnaire> findAllWithFilledScenariosByQuestionnaire(Questionnaire questionnaire);
+
+    // branches removed from the ressort of the questionnaire aren't copied, the FilledScenarios only follow the copied ones
+    @Modifying
+    @Query("insert into BranchQuestionnaire (branch, questionnaire) " +
+            "select bq.branch, newQuest from BranchQuestionnaire bq, Questionnaire newQuest " +
+            "where bq.questionnaire = ?1 and newQuest = ?2 and (newQuest.ressort is null " +
+            "or exists (select r.id from Ressort r join r.branches rb where r = newQuest.ressort and rb = bq.branch))")
+    int copyBranchQuestionnaires(Questionnaire questionnaire, Questionnaire newQuestionnaire);
+
+    @Modifying
+    @Query("insert into BranchQuestionnaire (branch, questionnaire) " +
+            "select b, q from Questionnaire q, branch b " +
+            "where q.report is null and q.federalState is not null " +
+            "and not exists (select bq.id from BranchQuestionnaire bq where bq.questionnaire = q and bq.branch = b)")
+    int insertMissingBranchQuestionnairesOfFederalStates();
+
+    @Modifying
+    @Query("insert into BranchQuestionnaire (branch, questionnaire) " +
+            "select b, q from Questionnaire q join q.ressort r join r.branches b " +
+            "where q.report is null " +
+            "and not exists (select bq.id from BranchQuestionnaire bq where bq.questionnaire = q and bq.branch = b)")
+    int insertMissingBranchQuestionnairesOfRessorts();
+
+    @Modifying
+    @Query("delete from BranchQuestionnaire bq where exists (select q.id from Questionnaire q " +
+            "where q = bq.questionnaire and q.report is null and q.ressort is not null " +
+            "and not exists (select r.id from Ressort r join r.branches rb where r = q.ressort and rb = bq.branch))")
+    int deleteRemovedBranchQuestionnairesOfRessorts();
+
+    @Modifying
+    @Query("update BranchQuestionnaire bq set bq.questionnaire = ?2 where bq.questionnaire = ?1")
+    int moveBranchQuestionnaires(Questionnaire questionnaire, Questionnaire newQuestionnaire);
+
+    @Modifying
+    @Query("delete from BranchQuestionnaire bq where bq.questionnaire = ?1")
+    int deleteByQuestionnaire(Questionnaire questionnaire);
 }
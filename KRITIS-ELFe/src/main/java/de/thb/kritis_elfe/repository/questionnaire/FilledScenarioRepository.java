@@ -1,15 +1,60 @@
 package de.thb.kritis_elfe.repository.questionnaire;
 
+import de.thb.kritis_elfe.entity.Report;
 import de.thb.kritis_elfe.entity.questionnaire.FilledScenario;
+import de.thb.kritis_elfe.entity.questionnaire.Questionnaire;
+import de.thb.kritis_elfe.enums.ScenarioType;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.RepositoryDefinition;
 
+import java.util.Collection;
+import java.util.List;
 
 @RepositoryDefinition(domainClass = FilledScenario.class, idClass = Long.class)
 public interface FilledScenarioRepository extends CrudRepository<FilledScenario, Long> {
+    @Query("select fs from FilledScenario fs join fetch fs.branchQuestionnaire bq " +
+            "where fs.id in ?1 and bq.questionnaire.id = ?2 and bq.questionnaire.report is null")
+    List<FilledScenario> findAllByIdInAndQuestionnaireId(Collection<Long> ids, long questionnaireId);
+
+    // native because the entity name "scenario" collides with the property in the insert column list of HQL
+    @Modifying
+    @Query(value = "insert into filled_scenario (value, comment, scenario_id, branch_questionnaire_id) " +
+            "select fs.value, fs.comment, fs.scenario_id, nbq.id from filled_scenario fs " +
+            "join branch_questionnaire bq on fs.branch_questionnaire_id = bq.id " +
+            "join branch_questionnaire nbq on nbq.branch_id = bq.branch_id " +
+            "where bq.questionnaire_id = ?1 and nbq.questionnaire_id = ?2", nativeQuery = true)
+    int copyFilledScenarios(long questionnaireId, long newQuestionnaireId);
+
+    @Modifying
+    @Query(value = "insert into filled_scenario (value, comment, scenario_id, branch_questionnaire_id) " +
+            "select 0, '', s.id, bq.id from branch_questionnaire bq " +
+            "join questionnaire q on bq.questionnaire_id = q.id " +
+            "join scenario s on s.active = true " +
+            "where q.report_id is null and not exists (select fs.id from filled_scenario fs " +
+            "where fs.branch_questionnaire_id = bq.id and fs.scenario_id = s.id)", nativeQuery = true)
+    int insertMissingFilledScenariosOfLiveQuestionnaires();
+
     @Modifying
-    @Query("update FilledScenario us set us.value = ?1, us.comment = ?2 where us.id = ?3")
-    void updateFilledScenarioValueAndCommentDateFromId(short value, String comment, long id);
+    @Query("delete from FilledScenario fs where exists (select bq.id from BranchQuestionnaire bq join bq.questionnaire q " +
+            "where bq = fs.branchQuestionnaire and q.report is null and q.ressort is not null " +
+            "and not exists (select r.id from Ressort r join r.branches rb where r = q.ressort and rb = bq.branch))")
+    int deleteFilledScenariosOfRemovedRessortBranches();
+
+    @Modifying
+    @Query("delete from FilledScenario fs where exists (select bq.id from BranchQuestionnaire bq " +
+            "where bq = fs.branchQuestionnaire and bq.questionnaire = ?1)")
+    int deleteByQuestionnaire(Questionnaire questionnaire);
+
+    @Query("select b.sector.id as sectorId, q.federalState.id as federalStateId, max(fs.value) as value " +
+            "from FilledScenario fs join fs.branchQuestionnaire bq join bq.branch b, Questionnaire q " +
+            "where q.report = ?1 and bq.questionnaire.id = coalesce(q.sharedQuestionnaire.id, q.id) and fs.scenario.scenarioType = ?2 " +
+            "group by b.sector.id, q.federalState.id")
+    List<SectorMaxValue> findMaxValuesBySectorAndFederalStateForReport(Report report, ScenarioType scenarioType);
+
+    @Query("select q as questionnaire, fs as filledScenario " +
+            "from FilledScenario fs join fetch fs.branchQuestionnaire bq join fetch bq.branch join fetch fs.scenario, Questionnaire q " +
+            "where q.report = ?1 and bq.questionnaire.id = coalesce(q.sharedQuestionnaire.id, q.id)")
+    List<ReportFilledScenario> findAllWithQuestionnaireByReport(Report report);
 }
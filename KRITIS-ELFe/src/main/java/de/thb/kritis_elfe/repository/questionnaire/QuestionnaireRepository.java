@@ -1,13 +1,16 @@
 package de.thb.kritis_elfe.repository.questionnaire;
 
 import de.thb.kritis_elfe.entity.FederalState;
+import de.thb.kritis_elfe.entity.Report;
 import de.thb.kritis_elfe.entity.Ressort;
 import de.thb.kritis_elfe.entity.questionnaire.Questionnaire;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
 import org.springframework.data.repository.RepositoryDefinition;
 
+import javax.persistence.LockModeType;
 import java.time.LocalDateTime;
 import java.util.List;
 
@@ -15,18 +18,85 @@ import java.util.List;
 public interface QuestionnaireRepository extends CrudRepository<Questionnaire, Long> {
 
     Questionnaire findById(long id);
+
+    // blocks other changes of the questionnaire until the end of the transaction
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    Questionnaire findLockedById(long id);
+
     Questionnaire findAllByFederalState(FederalState federalState);
-    Questionnaire findFirstByFederalStateOrderByIdDesc(FederalState federalState);
-    Questionnaire findFirstByRessortOrderByIdDesc(Ressort ressort);
-    boolean existsByIdAndFederalState(long id, FederalState federalState);
-    boolean existsByIdAndRessort(long id, Ressort ressort);
+    // questionnaire of the newest report, the ids of the questionnaires don't follow the order of the reports
+    Questionnaire findFirstByFederalStateAndReportIsNotNullOrderByReportIdDesc(FederalState federalState);
+    Questionnaire findFirstByRessortAndReportIsNotNullOrderByReportIdDesc(Ressort ressort);
+
+    List<Questionnaire> findAllByReport(Report report);
+    // sharing questionnaire of the oldest later report, it takes over the content when the shared questionnaire is deleted
+    Questionnaire findFirstBySharedQuestionnaireOrderByReportIdAsc(Questionnaire sharedQuestionnaire);
+
+    @Query("select distinct q from Questionnaire q left join fetch q.branchQuestionnaires bq left join fetch bq.branch b left join fetch b.sector " +
+            "where q.id = (select max(lq.id) from Questionnaire lq where lq.federalState = ?1 and lq.report is null) order by b.id")
+    Questionnaire findLiveQuestionnaireWithBranchesByFederalState(FederalState federalState);
+
+    @Query("select distinct q from Questionnaire q left join fetch q.branchQuestionnaires bq left join fetch bq.branch b left join fetch b.sector " +
+            "where q.id = (select max(lq.id) from Questionnaire lq where lq.ressort = ?1 and lq.report is null) order by b.id")
+    Questionnaire findLiveQuestionnaireWithBranchesByRessort(Ressort ressort);
+
+    @Query("select q.federalState.id as federalStateId, q.ressort.id as ressortId, q.updated as updated, q.date as date " +
+            "from Questionnaire q where q.id in (select max(lq.id) from Questionnaire lq where lq.report is null " +
+            "group by lq.federalState.id, lq.ressort.id)")
+    List<QuestionnaireStatus> findLiveQuestionnaireStatuses();
+
+    boolean existsByIdAndFederalStateAndReportIsNull(long id, FederalState federalState);
+    boolean existsByIdAndRessortAndReportIsNull(long id, Ressort ressort);
     List<Questionnaire> findAll();
 
     @Modifying
-    @Query("update Questionnaire quest set quest.date = ?1 where quest.id = ?2")
-    void updateQuestionnaireDateFromId(LocalDateTime localDateTime, long id);
+    @Query("update Questionnaire quest set quest.date = ?1, quest.unchangedSinceReport = false, quest.version = quest.version + 1 where quest.id = ?2")
+    void updateChangedQuestionnaireDateFromId(LocalDateTime localDateTime, long id);
+
+    @Modifying
+    @Query("update Questionnaire quest set quest.date = ?1, quest.updated = ?2, quest.unchangedSinceReport = false, " +
+            "quest.version = quest.version + 1 where quest.id = ?3")
+    void updateChangedQuestionnaireDateAndUpdatedAndVersionFromId(LocalDateTime localDateTime, boolean updated, long id);
+
+    @Modifying
+    @Query("update Questionnaire quest set quest.date = ?1, quest.updated = ?2, quest.unchangedSinceReport = false, " +
+            "quest.version = quest.version + 1 where quest.id = ?3 and quest.version = ?4")
+    int updateChangedQuestionnaireDateAndUpdatedFromIdAndVersion(LocalDateTime localDateTime, boolean updated, long id, long version);
 
     @Modifying
     @Query("update Questionnaire quest set quest.date = ?1, quest.updated = ?2 where quest.id = ?3")
     void updateQuestionnaireDateAndUpdatedFromId(LocalDateTime localDateTime, boolean updated, long id);
+
+    @Modifying
+    @Query("update Questionnaire quest set quest.date = ?1, quest.unchangedSinceReport = false where quest.report is null " +
+            "and exists (select bq.id from BranchQuestionnaire bq, scenario s where bq.questionnaire = quest and s.active = true " +
+            "and not exists (select fs.id from FilledScenario fs where fs.branchQuestionnaire = bq and fs.scenario = s))")
+    int updateChangedDateOfLiveQuestionnairesWithMissingFilledScenarios(LocalDateTime localDateTime);
+
+    @Modifying
+    @Query("update Questionnaire quest set quest.date = ?1, quest.unchangedSinceReport = false where quest.report is null " +
+            "and quest.ressort is not null and exists (select bq.id from BranchQuestionnaire bq where bq.questionnaire = quest " +
+            "and not exists (select r.id from Ressort r join r.branches rb where r = quest.ressort and rb = bq.branch))")
+    int updateChangedDateOfLiveRessortQuestionnairesWithRemovedBranches(LocalDateTime localDateTime);
+
+    @Modifying
+    @Query("update Questionnaire quest set quest.branchesVersion = (select r.branchesVersion from Ressort r where r.id = quest.ressort.id) " +
+            "where quest.report is null and quest.ressort is not null")
+    int updateBranchesVersionOfLiveRessortQuestionnaires();
+
+    @Modifying
+    @Query("update Questionnaire quest set quest.sharedQuestionnaire = ?2 where quest.sharedQuestionnaire = ?1 and quest <> ?2")
+    int updateSharedQuestionnaire(Questionnaire sharedQuestionnaire, Questionnaire newSharedQuestionnaire);
+
+    @Modifying
+    @Query("update Questionnaire quest set quest.sharedQuestionnaire = null where quest = ?1")
+    void removeSharedQuestionnaire(Questionnaire questionnaire);
+
+    @Modifying
+    @Query("update Questionnaire quest set quest.unchangedSinceReport = false where quest.report is null")
+    int updateUnchangedSinceReportOfLiveQuestionnaires();
+
+    @Modifying
+    @Query("delete from Questionnaire quest where quest.report = ?1")
+    void deleteByReport(Report report);
 }
@@ -0,0 +1,14 @@
+package de.thb.kritis_elfe.repository.questionnaire;
+
+import java.time.LocalDateTime;
+
+/**
+ * Projection of the status of the live questionnaire of a federal state or ressort.
+ * Only one of federalStateId and ressortId is set.
+ */
+public interface QuestionnaireStatus {
+    Long getFederalStateId();
+    Long getRessortId();
+    boolean isUpdated();
+    LocalDateTime getDate();
+}
@@ -0,0 +1,13 @@
+package de.thb.kritis_elfe.repository.questionnaire;
+
+import de.thb.kritis_elfe.entity.questionnaire.FilledScenario;
+import de.thb.kritis_elfe.entity.questionnaire.Questionnaire;
+
+/**
+ * Projection of a FilledScenario of a report together with the report questionnaire it belongs to.
+ * The questionnaire differs from the one of the BranchQuestionnaire if the report questionnaire shares its content.
+ */
+public interface ReportFilledScenario {
+    Questionnaire getQuestionnaire();
+    FilledScenario getFilledScenario();
+}
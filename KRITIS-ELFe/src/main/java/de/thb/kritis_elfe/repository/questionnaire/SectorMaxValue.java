@@ -0,0 +1,11 @@
+package de.thb.kritis_elfe.repository.questionnaire;
+
+/**
+ * Projection of the maximum value of all FilledScenarios of a sector for a federal state.
+ * The federalStateId is null for the maximum of all ressorts.
+ */
+public interface SectorMaxValue {
+    long getSectorId();
+    Long getFederalStateId();
+    short getValue();
+}
@@ -4,26 +4,34 @@ import de.thb.kritis_elfe.entity.*;
 import de.thb.kritis_elfe.service.Exceptions.EmptyFileException;
 import de.thb.kritis_elfe.service.Exceptions.WrongContentTypeException;
 import de.thb.kritis_elfe.service.helper.report.*;
+import de.thb.kritis_elfe.service.helper.word.WordDocumentReader;
+import de.thb.kritis_elfe.service.helper.word.WordDocumentWriter;
+import de.thb.kritis_elfe.service.helper.word.WordRun;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.pdfbox.io.MemoryUsageSetting;
 import org.apache.pdfbox.pdmodel.PDDocument;
 import org.apache.pdfbox.text.PDFTextStripper;
-import org.apache.pdfbox.text.PDFTextStripperByArea;
 import org.apache.poi.xwpf.extractor.XWPFWordExtractor;
-import org.apache.poi.xwpf.usermodel.*;
-import org.openxmlformats.schemas.wordprocessingml.x2006.main.STHighlightColor;
+import org.apache.poi.xwpf.usermodel.XWPFDocument;
+import org.springframework.core.io.InputStreamSource;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
 import javax.servlet.http.HttpServletResponse;
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
 @Service
+@Slf4j
 public class DocumentService {
     /**
      * Saves a given File on the given path.
@@ -49,6 +57,7 @@ public class DocumentService {
 
     /**
      * Creates the classical report as word document and write it in the given output stream.
+     * The document is written while it is created.
      * @param outputStream
      * @param sectors
      * @param federalStates
@@ -58,63 +67,50 @@ public class DocumentService {
      */
     public void createReportWordDocument(OutputStream outputStream, List<Sector> sectors, List<FederalState> federalStates,
                                          SectorReportValueAccessor sectorReportValueAccessor, Report report) throws IOException {
-        XWPFDocument document = new XWPFDocument();
+        WordDocumentWriter document = new WordDocumentWriter(outputStream);
 
-        XWPFParagraph title = document.createParagraph();
-        title.setAlignment(ParagraphAlignment.LEFT);
+        document.writeParagraph("left",
+                WordRun.builder().text("Lagebild Report").bold(true).fontFamily("Calibri").fontSize(14).breaks(2).build(),
+                WordRun.builder().text("Für den Report " + report).build());
 
-        XWPFRun titleRun = title.createRun();
-        titleRun.setText("Lagebild Report");
-        titleRun.addBreak();
-        titleRun.addBreak();
-        titleRun.setBold(true);
-        titleRun.setFontFamily("Calibri");
-        titleRun.setFontSize(20);
-
-        XWPFRun reportRun = title.createRun();
-        reportRun.setText( "Für den Report " + report);
-        titleRun.setFontFamily("Calibri");
-        titleRun.setFontSize(14);
-
-        XWPFTable reportTable = document.createTable(sectors.size() + 1,federalStates.size() + 2);
-
-        XWPFTableRow federalStateTableRow = reportTable.getRow(0);
+        // sector, ressorts and federal states
+        document.startTable(2 + federalStates.size());
 
         //add Ressort head
-        XWPFTableCell ressortTableCell = federalStateTableRow.getCell(1);
-        ressortTableCell.setText("Bund");
-        centerCellText(ressortTableCell);
+        document.startTableRow();
+        document.writeTableCell(null, false, null);
+        document.writeTableCell(null, true, WordRun.builder().text("Bund").build());
 
         //create all federalStates
-        fillRowWithFederalStatesFromIndex(federalStates, federalStateTableRow, 2, false);
+        fillRowWithFederalStates(document, federalStates, false);
+        document.endTableRow();
 
         for(int i = 0; i < sectors.size(); i++){
-            XWPFTableRow xwpfTableRow = reportTable.getRow(1 + i);
+            document.startTableRow();
             //add sector cell
-            XWPFTableCell sectorTableCell = xwpfTableRow.getCell(0);
-            sectorTableCell.setText((i +1) + ". " + sectors.get(i));
+            document.writeTableCell(null, false, WordRun.builder().text((i + 1) + ". " + sectors.get(i)).build());
             //add Ressort value
             ReportValue sectorReportValue = sectorReportValueAccessor.getSectorRessortReportValue(sectors.get(i));
-            setColorAndTextForCellFromSectorReportValue(xwpfTableRow.getCell(1), sectorReportValue);
+            writeCellFromSectorReportValue(document, sectorReportValue);
 
             //create all federalStates
-            for(int j = 0; j < federalStates.size(); j++){
-                XWPFTableCell tableCell = xwpfTableRow.getCell(2 + j);
-                sectorReportValue = sectorReportValueAccessor.getSectorFederalStateSectorReportValue(sectors.get(i), federalStates.get(j));
-                setColorAndTextForCellFromSectorReportValue(tableCell, sectorReportValue);
+            for(FederalState federalState: federalStates){
+                sectorReportValue = sectorReportValueAccessor.getSectorFederalStateSectorReportValue(sectors.get(i), federalState);
+                writeCellFromSectorReportValue(document, sectorReportValue);
             }
+            document.endTableRow();
         }
+        document.endTable();
 
-        document.createParagraph().createRun().addBreak();
-
-        document.write(outputStream);
-        document.close();
+        document.writeParagraph(null, WordRun.builder().breaks(1).build());
 
+        document.finish();
     }
 
     //TODO delete duplicates!!!!!!! Sind viele und ordnen
     /**
      * Creates the sector report as word document and write it in the given output stream.
+     * The document is written while it is created, so only the current branch is held in memory.
      * @param outputStream
      * @param sector
      * @param federalStates
@@ -123,44 +119,17 @@ public class DocumentService {
      */
     public void createSectorReportWordDocument(OutputStream outputStream, Sector sector, List<FederalState> federalStates,
                                                BranchReportValueAccessor branchReportValueAccessor) throws IOException {
-        XWPFDocument document = new XWPFDocument();
-
-        XWPFParagraph title = document.createParagraph();
-        title.setAlignment(ParagraphAlignment.LEFT);
+        WordDocumentWriter document = new WordDocumentWriter(outputStream);
 
-        XWPFRun titleRun = title.createRun();
-        titleRun.setText("Sektor " + sector.getName());
-        titleRun.addBreak();
-        titleRun.setBold(true);
-        titleRun.setFontFamily("Calibri");
-        titleRun.setFontSize(20);
+        document.writeParagraph("left",
+                WordRun.builder().text("Sektor " + sector.getName()).bold(true).fontFamily("Calibri").fontSize(20).breaks(1).build());
 
         for(Branch branch: sector.getBranches()){
-            XWPFParagraph branchParagraph = document.createParagraph();
-            title.setAlignment(ParagraphAlignment.LEFT);
-
-            XWPFRun branchTitleRun = branchParagraph.createRun();
-            branchTitleRun.setText("Branche " + branch.getName());
-            branchTitleRun.setFontSize(16);
-            branchTitleRun.setBold(true);
-            branchTitleRun.setUnderline(UnderlinePatterns.SINGLE);
-            branchTitleRun.addBreak();
-
-            XWPFTable branchTable = document.createTable(2, federalStates.size() + 1);
-
-            XWPFParagraph commentParagraph = document.createParagraph();
-
-            XWPFTableRow headTableRow = branchTable.getRow(0);
-
-            XWPFTableCell headRessortTableCell = headTableRow.getCell(0);
-
-            centerCellText(headRessortTableCell);
+            document.writeParagraph(null,
+                    WordRun.builder().text("Branche " + branch.getName()).bold(true).fontSize(16).underlined(true).breaks(1).build());
 
             String ressortHead = "";
-            for(Ressort ressort: branchReportValueAccessor.getRessorts()){
-                HashMap<Scenario, FormattedComment> comments = branchReportValueAccessor.getRessortCommentReportValue(branch).getComments(ressort);
-                createCommentRepresentationForComments(commentParagraph, ressort.getShortcut(), comments);
-
+            for(Ressort ressort: branchReportValueAccessor.getRessorts(sector)){
                 if(ressortHead.isEmpty()){
                     ressortHead = ressort.getName();
                 }else{
@@ -172,135 +141,122 @@ public class DocumentService {
                 ressortHead = "/";
             }
 
-            headRessortTableCell.setText(" " + ressortHead + " ");
-
-            fillRowWithFederalStatesFromIndex(federalStates, headTableRow, 1, true);
+            // ressorts and federal states
+            document.startTable(1 + federalStates.size());
 
-            XWPFTableRow branchTableRow = branchTable.getRow(1);
+            document.startTableRow();
+            document.writeTableCell(null, true, WordRun.builder().text(" " + ressortHead + " ").build());
+            fillRowWithFederalStates(document, federalStates, true);
+            document.endTableRow();
 
-            XWPFTableCell branchRessortTableCell = branchTableRow.getCell(0);
-            setColorAndTextForCellFromSectorReportValue(branchRessortTableCell, branchReportValueAccessor.getRessortCommentReportValue(branch));
-
-            for(int i = 0; i < federalStates.size(); i++){
-                FederalState federalState = federalStates.get(i);
-                CommentReportValue commentReportValue = branchReportValueAccessor.getFederalStateBranchCommentReportValue(branch, federalState);
-                XWPFTableCell branchFederalStateTableCell = branchTableRow.getCell(1 + i);
-                setColorAndTextForCellFromSectorReportValue(branchFederalStateTableCell, commentReportValue);
+            document.startTableRow();
+            writeCellFromSectorReportValue(document, branchReportValueAccessor.getRessortCommentReportValue(branch));
+            for(FederalState federalState: federalStates){
+                writeCellFromSectorReportValue(document, branchReportValueAccessor.getFederalStateBranchCommentReportValue(branch, federalState));
+            }
+            document.endTableRow();
 
-                HashMap<Scenario, FormattedComment> comments = commentReportValue.getComments();
+            document.endTable();
 
-                createCommentRepresentationForComments(commentParagraph, federalState.getShortcut(), comments);
+            //the comments follow the table
+            document.startParagraph(null);
+            for(Ressort ressort: branchReportValueAccessor.getRessorts(sector)){
+                HashMap<Scenario, FormattedComment> comments = branchReportValueAccessor.getRessortCommentReportValue(branch).getComments(ressort);
+                writeCommentRepresentationForComments(document, ressort.getShortcut(), comments);
             }
 
-
+            for(FederalState federalState: federalStates){
+                CommentReportValue commentReportValue = branchReportValueAccessor.getFederalStateBranchCommentReportValue(branch, federalState);
+                writeCommentRepresentationForComments(document, federalState.getShortcut(), commentReportValue.getComments());
+            }
+            document.endParagraph();
         }
 
-        document.write(outputStream);
-        document.close();
+        document.finish();
     }
 
     /**
-     * Fills the row with all given federalstates shortcuts from the given index
+     * Creates the sector reports of all given sectors as word documents and writes them as zip archive in the given output stream.
+     * Every document is streamed directly into its zip entry.
+     * @param outputStream
+     * @param sectors
      * @param federalStates
-     * @param headTableRow
-     * @param startIndex
+     * @param branchReportValueAccessor accessor for all given sectors
+     * @throws IOException
      */
-    private void fillRowWithFederalStatesFromIndex(List<FederalState> federalStates, XWPFTableRow headTableRow, int startIndex, boolean fillLeftAndRight) {
-        for(int i = 0; i < federalStates.size(); i++){
-            XWPFTableCell headFederalStateTableCell = headTableRow.getCell(i + startIndex);
-            centerCellText(headFederalStateTableCell);
-            String text = federalStates.get(i).getShortcut();
-            if(fillLeftAndRight){
-                text = " " + text + " ";
-            }
-            headFederalStateTableCell.setText(text);
+    public void createSectorReportsZip(OutputStream outputStream, List<Sector> sectors, List<FederalState> federalStates,
+                                       BranchReportValueAccessor branchReportValueAccessor) throws IOException {
+        ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream);
+        for(int i = 0; i < sectors.size(); i++){
+            zipOutputStream.putNextEntry(new ZipEntry((i + 1) + ". Sektorreport " + sectors.get(i).getName().replaceAll("[\\\\/:*?\"<>|]", "_") + ".docx"));
+            createSectorReportWordDocument(zipOutputStream, sectors.get(i), federalStates, branchReportValueAccessor);
+            zipOutputStream.closeEntry();
         }
+        zipOutputStream.finish();
     }
 
     /**
-     * Centers the text in a given XWPFTableCell
-     * @param tableCell
+     * Writes a centered cell with the shortcut for every given federalstate into the current row.
+     * @param document
+     * @param federalStates
+     * @param fillLeftAndRight
+     * @throws IOException
      */
-    private void centerCellText(XWPFTableCell tableCell){
-        tableCell.setVerticalAlignment(XWPFTableCell.XWPFVertAlign.CENTER);
-        tableCell.getParagraphs().get(0).setAlignment(ParagraphAlignment.CENTER);
-        XWPFParagraph paragraph = tableCell.getParagraphs().get(0);
-        paragraph.setSpacingBefore(1);
-        paragraph.setSpacingAfter(1);
+    private void fillRowWithFederalStates(WordDocumentWriter document, List<FederalState> federalStates, boolean fillLeftAndRight) throws IOException {
+        for(FederalState federalState: federalStates){
+            String text = federalState.getShortcut();
+            if(fillLeftAndRight){
+                text = " " + text + " ";
+            }
+            document.writeTableCell(null, true, WordRun.builder().text(text).build());
+        }
     }
 
     /**
-     * Adds the given comments to the given paragraph with assignment to the shortcut of the institution and all color information.
-     * @param commentParagraph
+     * Writes the given comments into the current paragraph with assignment to the shortcut of the institution and all color information.
+     * @param document
      * @param shortcut
      * @param comments
+     * @throws IOException
      */
-    private void createCommentRepresentationForComments(XWPFParagraph commentParagraph, String shortcut, HashMap<Scenario, FormattedComment> comments) {
+    private void writeCommentRepresentationForComments(WordDocumentWriter document, String shortcut, HashMap<Scenario, FormattedComment> comments) throws IOException {
         if(comments != null && comments.size() > 0) {
-            XWPFRun commentRessortHeadRun = commentParagraph.createRun();
-            commentRessortHeadRun.setBold(true);
-            commentRessortHeadRun.setText(shortcut + ":");
-            commentRessortHeadRun.addBreak();
+            document.writeRun(WordRun.builder().text(shortcut + ":").bold(true).breaks(1).build());
 
-            comments.forEach((scenario, formattedComment) -> {
-                commentParagraph.createRun().setText("- ");
+            for(FormattedComment formattedComment: comments.values()){
+                document.writeRun(WordRun.builder().text("- ").build());
                 for(String coloredComment: formattedComment.getCommentParts()){
-                    XWPFRun commentRun = commentParagraph.createRun();
-                    if(formattedComment.isYellow()){
-                        commentRun.getCTR().addNewRPr().addNewHighlight().setVal(STHighlightColor.YELLOW);
-                    }
-                    writeTextInRunWithBreaks(commentRun, coloredComment);
+                    document.writeRun(WordRun.builder().text(coloredComment).highlighted(formattedComment.isYellow()).build());
                 }
-                commentParagraph.createRun().addBreak();
-            });
-
-            commentParagraph.createRun().addBreak();
-        }
-    }
-
-    /**
-     * Write the given Text in the given run and add all the "next lines".
-     * Otherwise their where ignored.
-     * @param run
-     * @param text
-     */
-    private void writeTextInRunWithBreaks(XWPFRun run, String text){
-        String[] singleTexts = text.split("\n");
-        for(int i = 0; i < singleTexts.length; i++){
-            run.setText(singleTexts[i]);
-            if(i != singleTexts.length - 1) {
-                run.addBreak();
+                document.writeRun(WordRun.builder().breaks(1).build());
             }
+
+            document.writeRun(WordRun.builder().breaks(1).build());
         }
     }
 
     /**
-     * Set the Text and color of the given cell from the given reportvalue.
-     * @param xwpfTableCell
+     * Writes a centered cell with the color and change type of the given reportvalue into the current row.
+     * @param document
      * @param sectorReportValue
+     * @throws IOException
      */
-    private void setColorAndTextForCellFromSectorReportValue(XWPFTableCell xwpfTableCell, ReportValue sectorReportValue){
-        //set color
-        xwpfTableCell.setColor(sectorReportValue.getValueColorAsWordString());
-        //center cell
-        XWPFParagraph cellParagraph = xwpfTableCell.getParagraphs().get(0);
-        centerCellText(xwpfTableCell);
-        //set bold and size
-        XWPFRun cellRun = cellParagraph.createRun();
-        cellRun.setBold(true);
-        cellRun.setFontSize(12);
-
+    private void writeCellFromSectorReportValue(WordDocumentWriter document, ReportValue sectorReportValue) throws IOException {
+        String text = null;
         switch (sectorReportValue.getValueChangedType()){
             case UNEQUAL:
-                cellRun.setText(" ≠ ");
+                text = " ≠ ";
                 break;
             case UP:
-                cellRun.setText(" ↑ ");
+                text = " ↑ ";
                 break;
             case DOWN:
-                cellRun.setText(" ↓ ");
+                text = " ↓ ";
                 break;
         }
+
+        document.writeTableCell(sectorReportValue.getValueColorAsWordString(), true,
+                WordRun.builder().text(text).bold(true).fontSize(12).build());
     }
 
     /**
@@ -315,35 +271,92 @@ public class DocumentService {
         response.setHeader(headerKey, headerValue);
     }
 
+    /**
+     * Sets the response Header for the given response to immediately download the zip archive with the given filename.
+     * @param response
+     * @param filename
+     */
+    public void setZipDownloadResponseHeader(HttpServletResponse response, String filename){
+        response.setContentType("application/zip");
+        String headerKey = "Content-Disposition";
+        String headerValue = "attachment; filename=" + filename;
+        response.setHeader(headerKey, headerValue);
+    }
+
     /**
      * Extract the text from the given file dependent on its content type.
-     * @param file
-     * @return
+     * @param contentType
+     * @param file uploaded file or its buffered content
+     * @param textStart the text before its first occurrence can be left out, if it occurs
+     * @return the text, null if the file can't be read, because its content type isn't supported, it is encrypted or broken
      */
-    public String getTextFromFile(MultipartFile file) {
+    public String getTextFromFile(String contentType, InputStreamSource file, String textStart) {
         String extractedText = null;
         try{
-            if(file.getContentType().equals("application/pdf")){
-                PDDocument document = PDDocument.load(file.getInputStream());
-                document.getClass();
-                if (!document.isEncrypted()) {
-                    PDFTextStripperByArea stripper = new PDFTextStripperByArea();
-                    stripper.setSortByPosition(true);
-                    PDFTextStripper tStripper = new PDFTextStripper();
-                    extractedText = tStripper.getText(document);
+            if("application/pdf".equals(contentType)){
+                extractedText = getTextFromPdf(file, textStart);
+            }else if("application/vnd.openxmlformats-officedocument.wordprocessingml.document".equals(contentType)){
+                extractedText = getTextFromWordDocument(file, textStart);
+            }else{
+                log.info("The text of a file with the content type {} can't be read.", contentType);
+            }
+        } catch (IOException | RuntimeException e){
+            // the libraries throw runtime exceptions for broken files too
+            log.warn("The text of a file with the content type {} could not be read.", contentType, e);
+        }
+
+        return extractedText == null ? null : extractedText.replace((char)160, ' ');
+    }
+
+    /**
+     * Extracts the text page by page. The content of the pdf is buffered in a temporary file instead of the heap
+     * and the text before the given start is dropped, as soon as it is found.
+     * @return the text, null if the pdf is encrypted
+     */
+    private String getTextFromPdf(InputStreamSource file, String textStart) throws IOException {
+        try(PDDocument document = PDDocument.load(file.getInputStream(), MemoryUsageSetting.setupTempFileOnly())){
+            if(document.isEncrypted()){
+                return null;
+            }
+
+            PDFTextStripper stripper = new PDFTextStripper();
+            StringBuilder text = new StringBuilder();
+            boolean textStartFound = false;
+            // only the appended text and the end of the text before, which could hold the beginning of the start, is searched
+            int searchStart = 0;
+            for(int page = 1; page <= document.getNumberOfPages(); page++){
+                stripper.setStartPage(page);
+                stripper.setEndPage(page);
+                text.append(stripper.getText(document));
+
+                if(!textStartFound){
+                    int textStartIndex = text.indexOf(textStart, searchStart);
+                    if(textStartIndex >= 0){
+                        text.delete(0, textStartIndex);
+                        textStartFound = true;
+                    }else{
+                        searchStart = Math.max(0, text.length() - textStart.length() + 1);
+                    }
                 }
-                document.close();
-            }else if(file.getContentType().equals("application/vnd.openxmlformats-officedocument.wordprocessingml.document")){
-                XWPFDocument doc = new XWPFDocument(file.getInputStream());
-                XWPFWordExtractor xwpfWordExtractor = new XWPFWordExtractor(doc);
-                extractedText = xwpfWordExtractor.getText();
-                doc.close();
             }
+            return text.toString();
+        }
+    }
 
-        } catch (IOException ioException){
-            System.err.println(ioException);
+    /**
+     * Streams the text of the body out of the word document with the markers of its form fields, headers, footers and comments aren't read.
+     * Only a docx without the usual document part is loaded completely by POI.
+     */
+    private String getTextFromWordDocument(InputStreamSource file, String textStart) throws IOException {
+        try(InputStream inputStream = file.getInputStream()){
+            String text = WordDocumentReader.readText(inputStream, textStart);
+            if(text != null){
+                return text;
+            }
         }
 
-        return extractedText.replaceAll(Character.toString((char)160), " ");
+        try(XWPFDocument doc = new XWPFDocument(file.getInputStream())){
+            return new XWPFWordExtractor(doc).getText();
+        }
     }
 }
@@ -0,0 +1,7 @@
+package de.thb.kritis_elfe.service.Exceptions;
+
+public class ImportJobRejectedException extends Exception{
+    public ImportJobRejectedException(String message) {
+        super(message);
+    }
+}
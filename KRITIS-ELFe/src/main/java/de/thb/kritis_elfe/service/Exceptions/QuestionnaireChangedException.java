@@ -0,0 +1,11 @@
+package de.thb.kritis_elfe.service.Exceptions;
+
+public class QuestionnaireChangedException extends Exception{
+    public QuestionnaireChangedException(String message){
+        super(message);
+    }
+
+    public QuestionnaireChangedException(){
+        super("The questionnaire was changed in the meantime.");
+    }
+}
@@ -0,0 +1,271 @@
+package de.thb.kritis_elfe.service;
+
+import de.thb.kritis_elfe.configuration.KritisElfeReader;
+import de.thb.kritis_elfe.entity.Report;
+import de.thb.kritis_elfe.entity.Sector;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PreDestroy;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Provides the word documents of the reports. Because a report never changes after its creation,
+ * every document is created only once and saved in the configured cache directory.
+ * The cached documents are used until the previous report changes or they are evicted, because the cache is full.
+ */
+@Service
+@AllArgsConstructor
+@Slf4j
+public class ReportDocumentService {
+    // has to be increased with every change of the layout of the documents, so the old documents aren't used anymore
+    private static final int DOCUMENT_VERSION = 1;
+
+    private final ReportService reportService;
+    private final SectorService sectorService;
+    private final FederalStateService federalStateService;
+    private final DocumentService documentService;
+    private final KritisElfeReader kritisElfeReader;
+    private final TransactionTemplate transactionTemplate;
+    // creates the documents of new reports one after another, so creating a report doesn't wait for them
+    private final ExecutorService cachingExecutorService = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "report-document-cache");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Writes the classical report as word document in the given output stream.
+     * @param outputStream
+     * @param report
+     * @throws IOException
+     */
+    public void writeReportWordDocument(OutputStream outputStream, Report report) throws IOException {
+        writeDocument(outputStream, report, "overall.docx", createReportWordDocumentCreator(report));
+    }
+
+    /**
+     * Writes the sector report of the given sector as word document in the given output stream.
+     * @param outputStream
+     * @param report
+     * @param sector
+     * @throws IOException
+     */
+    public void writeSectorReportWordDocument(OutputStream outputStream, Report report, Sector sector) throws IOException {
+        writeDocument(outputStream, report, "sector_" + sector.getId() + ".docx", createSectorReportWordDocumentCreator(report, sector));
+    }
+
+    /**
+     * Writes the sector reports of all sectors as zip archive in the given output stream.
+     * @param outputStream
+     * @param report
+     * @throws IOException
+     */
+    public void writeSectorReportsZip(OutputStream outputStream, Report report) throws IOException {
+        writeDocument(outputStream, report, "sectors.zip", documentOutputStream ->
+                documentService.createSectorReportsZip(documentOutputStream, sectorService.getAllSectors(),
+                        federalStateService.getAllFederalStates(), reportService.createBranchReportValueAccessor(report)));
+    }
+
+    /**
+     * Creates all documents of the given report in the cache directory in the background, if this is enabled by kritiselfe.reportCacheEager.
+     * Inside a transaction the documents are created after its commit, so the report and its values are visible.
+     * A failure is only logged, because the documents are created again on download.
+     * @param report
+     */
+    public void cacheReportDocuments(Report report){
+        if(!kritisElfeReader.isReportCacheEager() || getCacheDirectory() == null){
+            return;
+        }
+
+        long reportId = report.getId();
+        if(TransactionSynchronizationManager.isSynchronizationActive()){
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cachingExecutorService.submit(() -> createCachedReportDocuments(reportId));
+                }
+            });
+        }else{
+            cachingExecutorService.submit(() -> createCachedReportDocuments(reportId));
+        }
+    }
+
+    @PreDestroy
+    public void shutdown(){
+        cachingExecutorService.shutdown();
+    }
+
+    private void createCachedReportDocuments(long reportId){
+        try {
+            // the documents load sectors and branches lazily, so they need a session like during a request
+            transactionTemplate.executeWithoutResult(status -> {
+                Report report = reportService.getReportById(reportId);
+                createCachedDocument(report, "overall.docx", createReportWordDocumentCreator(report));
+                for(Sector sector: sectorService.getAllSectors()){
+                    createCachedDocument(report, "sector_" + sector.getId() + ".docx", createSectorReportWordDocumentCreator(report, sector));
+                }
+            });
+        } catch (RuntimeException e) {
+            log.warn("The documents of the report {} could not be cached.", reportId, e);
+        }
+    }
+
+    private void createCachedDocument(Report report, String documentName, DocumentCreator documentCreator){
+        try {
+            openCachedDocument(report, documentName, documentCreator).close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private DocumentCreator createReportWordDocumentCreator(Report report){
+        return documentOutputStream -> documentService.createReportWordDocument(documentOutputStream, sectorService.getAllSectors(),
+                federalStateService.getAllFederalStates(), reportService.createSectorReportValueAccessor(report), report);
+    }
+
+    private DocumentCreator createSectorReportWordDocumentCreator(Report report, Sector sector){
+        return documentOutputStream -> documentService.createSectorReportWordDocument(documentOutputStream, sector,
+                federalStateService.getAllFederalStates(), reportService.createSectorBranchReportValueAccessor(report, sector));
+    }
+
+    /**
+     * Writes the cached document in the given output stream. The document is created and cached before, if it doesn't exist.
+     * Without a configured cache directory the document is created directly in the output stream.
+     */
+    private void writeDocument(OutputStream outputStream, Report report, String documentName, DocumentCreator documentCreator) throws IOException {
+        if(getCacheDirectory() == null){
+            documentCreator.create(outputStream);
+            return;
+        }
+
+        try(FileChannel fileChannel = openCachedDocument(report, documentName, documentCreator)){
+            WritableByteChannel outputChannel = Channels.newChannel(outputStream);
+            long position = 0;
+            long size = fileChannel.size();
+            while(position < size){
+                position += fileChannel.transferTo(position, size - position, outputChannel);
+            }
+        }
+        outputStream.flush();
+    }
+
+    /**
+     * Opens the cached document and creates it, if it doesn't exist.
+     * The document is opened while holding the lock of the eviction, so it can't be deleted before.
+     * @return channel for reading the cached document, has to be closed by the caller
+     */
+    private FileChannel openCachedDocument(Report report, String documentName, DocumentCreator documentCreator) throws IOException {
+        Path cacheDirectory = getCacheDirectory();
+        Files.createDirectories(cacheDirectory);
+
+        // the values of a report depend on the previous report, which changes, if the previous report is deleted
+        Report previousReport = reportService.getPreviousReport(report);
+        String reportPrefix = "report_" + report.getId() + "_";
+        String fileName = reportPrefix + (previousReport == null ? 0 : previousReport.getId())
+                + "_v" + DOCUMENT_VERSION + "_" + documentName;
+        Path file = cacheDirectory.resolve(fileName);
+
+        synchronized (this){
+            if(Files.exists(file)){
+                // the last modified time is used for the eviction of the least recently used documents
+                file.toFile().setLastModified(System.currentTimeMillis());
+                return FileChannel.open(file, StandardOpenOption.READ);
+            }
+        }
+
+        Path temporaryFile = Files.createTempFile(cacheDirectory, "tmp_", ".part");
+        try(OutputStream fileOutputStream = Files.newOutputStream(temporaryFile)){
+            documentCreator.create(fileOutputStream);
+        }catch (IOException | RuntimeException e){
+            Files.deleteIfExists(temporaryFile);
+            throw e;
+        }
+        synchronized (this){
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.READ);
+            try {
+                removeOutdatedDocuments(cacheDirectory, reportPrefix, fileName.substring(0, fileName.length() - documentName.length()), file);
+            } catch (IOException | RuntimeException e) {
+                fileChannel.close();
+                throw e;
+            }
+            return fileChannel;
+        }
+    }
+
+    /**
+     * Deletes the documents of the report, which were created for another previous report or document version,
+     * and the least recently used documents except the given current document, until all documents fit in the configured cache size.
+     */
+    private synchronized void removeOutdatedDocuments(Path cacheDirectory, String reportPrefix, String currentPrefix, Path currentFile) throws IOException {
+        File[] files = cacheDirectory.toFile().listFiles(file -> file.isFile() && file.getName().startsWith("report_"));
+        if(files == null){
+            return;
+        }
+
+        long cacheSize = 0;
+        for(File file: files){
+            String fileName = file.getName();
+            if(fileName.startsWith(reportPrefix) && !fileName.startsWith(currentPrefix)){
+                Files.deleteIfExists(file.toPath());
+            }else{
+                cacheSize += file.length();
+            }
+        }
+
+        long maxCacheSize = kritisElfeReader.getReportCacheSize() * 1024 * 1024;
+        if(cacheSize <= maxCacheSize){
+            return;
+        }
+
+        // the last modified times are read once, because sorting by values changing in between can fail
+        long[] lastModifiedTimes = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for(int i = 0; i < files.length; i++){
+            lastModifiedTimes[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> lastModifiedTimes[i]));
+
+        for(int i: order){
+            if(cacheSize <= maxCacheSize){
+                break;
+            }
+            File file = files[i];
+            if(file.exists() && !file.toPath().equals(currentFile)){
+                long fileSize = file.length();
+                Files.deleteIfExists(file.toPath());
+                cacheSize -= fileSize;
+            }
+        }
+    }
+
+    private Path getCacheDirectory(){
+        String path = kritisElfeReader.getReportCachePath();
+        if(path == null || path.isEmpty()){
+            return null;
+        }
+        return Paths.get(path);
+    }
+
+    private interface DocumentCreator {
+        void create(OutputStream outputStream) throws IOException;
+    }
+}
@@ -1,17 +1,24 @@
 package de.thb.kritis_elfe.service;
 
 import de.thb.kritis_elfe.entity.*;
-import de.thb.kritis_elfe.entity.questionnaire.BranchQuestionnaire;
 import de.thb.kritis_elfe.entity.questionnaire.FilledScenario;
 import de.thb.kritis_elfe.entity.questionnaire.Questionnaire;
 import de.thb.kritis_elfe.enums.ScenarioType;
 import de.thb.kritis_elfe.enums.ValueChangedType;
+import de.thb.kritis_elfe.repository.ReportBranchValueRepository;
+import de.thb.kritis_elfe.repository.ReportCommentRepository;
 import de.thb.kritis_elfe.repository.ReportRepository;
+import de.thb.kritis_elfe.repository.ReportSectorValueRepository;
+import de.thb.kritis_elfe.repository.questionnaire.ReportFilledScenario;
+import de.thb.kritis_elfe.repository.questionnaire.SectorMaxValue;
 import de.thb.kritis_elfe.service.helper.report.*;
+import de.thb.kritis_elfe.service.questionnaire.FilledScenarioService;
 import de.thb.kritis_elfe.service.questionnaire.QuestionnaireService;
 import lombok.AllArgsConstructor;
 import org.springframework.stereotype.Service;
 
+import javax.transaction.Transactional;
+
 import java.time.LocalDateTime;
 import java.util.*;
 
@@ -21,12 +28,22 @@ public class ReportService {
 
     private final ReportRepository reportRepository;
 
+    private final ReportSectorValueRepository reportSectorValueRepository;
+
+    private final ReportBranchValueRepository reportBranchValueRepository;
+
+    private final ReportCommentRepository reportCommentRepository;
+
     private final QuestionnaireService questionnaireService;
 
     private final SectorService sectorService;
 
     private final BranchService branchService;
 
+    private final FederalStateService federalStateService;
+
+    private final FilledScenarioService filledScenarioService;
+
     public List<Report> getAllReports(){return reportRepository.findAll();}
 
     public List<Report> getAllReportsOrderByDESC(){return reportRepository.findAllByOrderByIdDesc();}
@@ -35,175 +52,375 @@ public class ReportService {
 
     public Report getNewestReport(){return reportRepository.findTopByOrderByIdDesc();}
 
+    public Report getPreviousReport(Report report){return reportRepository.findTopByIdLessThanOrderByIdDesc(report.getId());}
+
+    @Transactional
     public void createReport(Report report){
         // Perist Report
         report.setDate(LocalDateTime.now());
         reportRepository.save(report);
 
         questionnaireService.persistQuestionnairesForReport(report);
+
+        // a report never changes after its creation, so the report values are computed only once
+        persistReportValues(report, reportRepository.findTopByIdLessThanOrderByIdDesc(report.getId()));
     }
 
+    /**
+     * Deletes the report with its values, comments and questionnaires.
+     * Content of its questionnaires shared by later reports is moved to the next of them, see
+     * QuestionnaireService.deleteQuestionnairesOfReport, so any report can be deleted, not only the newest one.
+     * The values of the following report were compared with this report, they are computed again on its next view.
+     * @param report
+     */
+    @Transactional
+    public void deleteReport(Report report){
+        reportSectorValueRepository.deleteByReport(report);
+        reportBranchValueRepository.deleteByReport(report);
+        reportCommentRepository.deleteByReport(report);
+
+        questionnaireService.deleteQuestionnairesOfReport(report);
+        reportRepository.delete(report);
+    }
 
+    /**
+     * Creates the BranchReportValueAccessor for the given report and sector from its precomputed branch values and comments.
+     * Only the values and comments of the branches of the sector are loaded.
+     * @param report
+     * @param sector
+     * @return BranchReportValueAccessor or null if the report is null
+     */
+    @Transactional
     public BranchReportValueAccessor createSectorBranchReportValueAccessor(Report report, Sector sector){
         if(report == null){
             return null;
         }
 
+        persistReportValuesIfOutdated(report);
+
+        return createBranchReportValueAccessor(reportBranchValueRepository.findAllByReportAndSector(report, sector),
+                reportCommentRepository.findAllByReportAndSector(report, sector));
+    }
+
+    /**
+     * Creates the BranchReportValueAccessor for all sectors of the given report from its precomputed branch values and comments.
+     * @param report
+     * @return BranchReportValueAccessor or null if the report is null
+     */
+    @Transactional
+    public BranchReportValueAccessor createBranchReportValueAccessor(Report report){
+        if(report == null){
+            return null;
+        }
+
+        persistReportValuesIfOutdated(report);
+
+        return createBranchReportValueAccessor(reportBranchValueRepository.findAllByReport(report),
+                reportCommentRepository.findAllByReport(report));
+    }
+
+    private BranchReportValueAccessor createBranchReportValueAccessor(List<ReportBranchValue> reportBranchValues, List<ReportComment> reportComments){
         HashMap<Branch, HashMap<FederalState, CommentReportValue>> federalStateBranchCommentReportValueHashMap = new HashMap<>();
         HashMap<Branch, RessortCommentsReportValue> branchRessortCommentsReportValue = new HashMap<>();
 
-        fillReportValuesAndHashMapsFromReportForSector(report, sector, branchRessortCommentsReportValue,
-                federalStateBranchCommentReportValueHashMap);
+        for(ReportBranchValue reportBranchValue: reportBranchValues){
+            Branch branch = reportBranchValue.getBranch();
+            if(reportBranchValue.getFederalState() != null){
+                federalStateBranchCommentReportValueHashMap.computeIfAbsent(branch, b -> new HashMap<>())
+                        .put(reportBranchValue.getFederalState(), new CommentReportValue(reportBranchValue.getValue(), reportBranchValue.getValueChangedType()));
+            }else{
+                RessortCommentsReportValue ressortCommentsReportValue = branchRessortCommentsReportValue.computeIfAbsent(branch, b -> new RessortCommentsReportValue());
+                if(reportBranchValue.getRessort() != null){
+                    ressortCommentsReportValue.getRessortComments().putIfAbsent(reportBranchValue.getRessort(), new HashMap<>());
+                }else{
+                    ressortCommentsReportValue.setValue(reportBranchValue.getValue());
+                    ressortCommentsReportValue.setValueChangedType(reportBranchValue.getValueChangedType());
+                }
+            }
+        }
+
+        for(ReportComment reportComment: reportComments){
+            HashMap<Scenario, FormattedComment> comments;
+            if(reportComment.getFederalState() != null){
+                comments = federalStateBranchCommentReportValueHashMap.get(reportComment.getBranch()).get(reportComment.getFederalState()).getComments();
+            }else{
+                comments = branchRessortCommentsReportValue.get(reportComment.getBranch()).getComments(reportComment.getRessort());
+            }
+            comments.put(reportComment.getScenario(), createFormattedComment(reportComment));
+        }
 
+        return new BranchReportValueAccessor(federalStateBranchCommentReportValueHashMap, branchRessortCommentsReportValue);
+    }
+
+    /**
+     * Computes and saves all report values again, if they were never computed
+     * or the previous report was deleted since they were computed.
+     * The report is locked before the values are checked again, so concurrent first views compute them only once.
+     * The flags are read from the database, because the given report may have been loaded before another view computed the values.
+     * @param report
+     */
+    private void persistReportValuesIfOutdated(Report report){
+        if(isReportValuesUpToDate(report)){
+            return;
+        }
+
+        reportRepository.findLockedById(report.getId());
+        if(!isReportValuesUpToDate(report)){
+            reportSectorValueRepository.deleteByReport(report);
+            reportBranchValueRepository.deleteByReport(report);
+            reportCommentRepository.deleteByReport(report);
+
+            persistReportValues(report, reportRepository.findTopByIdLessThanOrderByIdDesc(report.getId()));
+        }
+    }
+
+    private boolean isReportValuesUpToDate(Report report){
         Report oldReport = reportRepository.findTopByIdLessThanOrderByIdDesc(report.getId());
+        return reportRepository.existsByIdAndReportValuesComputedIsTrueAndComparedReportId(report.getId(), (oldReport == null) ? null : oldReport.getId());
+    }
+
+    /**
+     * Computes all sector and branch values and comments of the report compared to the old report and saves them.
+     * @param report
+     * @param oldReport the previous report, may be null
+     */
+    private void persistReportValues(Report report, Report oldReport){
+        persistSectorReportValues(report, oldReport);
+        persistBranchReportValues(report, oldReport);
+
+        report.setComparedReportId((oldReport == null) ? null : oldReport.getId());
+        report.setReportValuesComputed(true);
+        reportRepository.save(report);
+    }
+
+    private void persistBranchReportValues(Report report, Report oldReport){
+        HashMap<Branch, HashMap<FederalState, CommentReportValue>> federalStateBranchCommentReportValueHashMap = new HashMap<>();
+        HashMap<Branch, RessortCommentsReportValue> branchRessortCommentsReportValue = new HashMap<>();
+
+        fillBranchReportValuesFromReport(report, branchRessortCommentsReportValue, federalStateBranchCommentReportValueHashMap);
 
         HashMap<Branch, HashMap<FederalState, CommentReportValue>> oldFederalStateBranchCommentReportValueHashMap = new HashMap<>();
         HashMap<Branch, RessortCommentsReportValue> oldBranchRessortCommentsReportValue = new HashMap<>();
 
         if(oldReport != null){
-            fillReportValuesAndHashMapsFromReportForSector(oldReport, sector, oldBranchRessortCommentsReportValue,
-                    oldFederalStateBranchCommentReportValueHashMap);
+            fillBranchReportValuesFromReport(oldReport, oldBranchRessortCommentsReportValue, oldFederalStateBranchCommentReportValueHashMap);
         }
 
-        //add all change types
+        List<ReportBranchValue> reportBranchValues = new ArrayList<>();
+        List<ReportComment> reportComments = new ArrayList<>();
+
+        //add all change types and format all comments
         federalStateBranchCommentReportValueHashMap.forEach((branch, federalStateCommentReportValueHashMap) -> {
             federalStateCommentReportValueHashMap.forEach((federalState, commentReportValue) -> {
                 CommentReportValue oldCommentReportValue = null;
-                if(oldReport != null) {
+                if(oldFederalStateBranchCommentReportValueHashMap.containsKey(branch)) {
                     oldCommentReportValue = oldFederalStateBranchCommentReportValueHashMap.get(branch).get(federalState);
                 }
 
-                //format all comments
-                for (Map.Entry<Scenario, FormattedComment> entry : commentReportValue.getComments().entrySet()) {
-                    Scenario scenario = entry.getKey();
-                    FormattedComment formattedComment = entry.getValue();
-
-                    if(oldReport == null){
-                        formattedComment.formatCommentWithoutOldComment();
-                    }else{
-                        FormattedComment oldFormattedComment = oldCommentReportValue.getComments().get(scenario);
-                        if(oldFormattedComment == null){
-                            formattedComment.formatCommentWithoutOldComment();
-                        }else {
-                            formattedComment.formatCommentFromOldComment(oldFormattedComment.getComment());
-                        }
-                        }
-                }
-
+                formatComments(commentReportValue.getComments(), (oldCommentReportValue == null) ? null : oldCommentReportValue.getComments());
                 setValueChangedTypeByOldValue(commentReportValue, oldCommentReportValue);
+
+                reportBranchValues.add(createReportBranchValue(report, branch, federalState, null, commentReportValue));
+                commentReportValue.getComments().forEach((scenario, formattedComment) -> {
+                    reportComments.add(createReportComment(report, branch, scenario, federalState, null, formattedComment));
+                });
             });
         });
 
         branchRessortCommentsReportValue.forEach((branch, ressortCommentsReportValue) -> {
             RessortCommentsReportValue oldRessortCommentsReportValue = oldBranchRessortCommentsReportValue.get(branch);
-            //format all comments
+
             ressortCommentsReportValue.getRessortComments().forEach((ressort, formattedComments) -> {
-                //set to null if old report does not exists
-                HashMap<Scenario, FormattedComment> oldFormattedComments = (oldReport == null)? null : oldRessortCommentsReportValue.getComments(ressort);
+                formatComments(formattedComments, (oldRessortCommentsReportValue == null) ? null : oldRessortCommentsReportValue.getComments(ressort));
 
+                reportBranchValues.add(createReportBranchValue(report, branch, null, ressort, new ReportValue()));
                 formattedComments.forEach((scenario, formattedComment) -> {
-                    if(oldRessortCommentsReportValue == null){
-                        formattedComment.formatCommentWithoutOldComment();
-                    }else {
-                        formattedComment.formatCommentFromOldComment(oldFormattedComments.get(scenario).getComment());
-                    }
+                    reportComments.add(createReportComment(report, branch, scenario, null, ressort, formattedComment));
                 });
             });
             setValueChangedTypeByOldValue(ressortCommentsReportValue, oldRessortCommentsReportValue);
+
+            reportBranchValues.add(createReportBranchValue(report, branch, null, null, ressortCommentsReportValue));
         });
 
-        return new BranchReportValueAccessor(federalStateBranchCommentReportValueHashMap, branchRessortCommentsReportValue);
+        reportBranchValueRepository.saveAll(reportBranchValues);
+        reportCommentRepository.saveAll(reportComments);
     }
 
-    //TODO many code duplicates make it simple
-    private void fillReportValuesAndHashMapsFromReportForSector(Report report, Sector sector, HashMap<Branch, RessortCommentsReportValue> branchRessortCommentsReportValue,
-                                                       HashMap<Branch, HashMap<FederalState, CommentReportValue>> federalStateBranchCommentReportValueHashMap){
-        //List of all Branches missing in all ressorts
-        //delete all existing in the ressort part of the for loop
-        List<Branch> missingRessortBranches = branchService.getAllBranches();
-
-        for(Questionnaire questionnaire: report.getQuestionnaires()){
-            for(BranchQuestionnaire branchQuestionnaire: questionnaire.getBranchQuestionnaires()){
-
-                //only take branchQuestionnaires with branch inside the sector
-                if(sector.getBranches().contains(branchQuestionnaire.getBranch())) {
-                    if (questionnaire.getFederalState() != null) {
-                        HashMap<FederalState, CommentReportValue> federalStateCommentReportValueHashMap = federalStateBranchCommentReportValueHashMap.get(branchQuestionnaire.getBranch());
-                        if(federalStateCommentReportValueHashMap == null){
-                            federalStateCommentReportValueHashMap = new HashMap<>();
-                            federalStateBranchCommentReportValueHashMap.put(branchQuestionnaire.getBranch(), federalStateCommentReportValueHashMap);
-                        }
-
-                        CommentReportValue commentReportValue = federalStateCommentReportValueHashMap.get(questionnaire.getFederalState());
-                        if(commentReportValue == null){
-                            commentReportValue = new CommentReportValue();
-                            federalStateCommentReportValueHashMap.put(questionnaire.getFederalState(), commentReportValue);
-                        }
-
-                        for (FilledScenario filledScenario : branchQuestionnaire.getFilledScenarios()) {
-                            if((filledScenario.getValue() > 1 || filledScenario.getScenario().getScenarioType() == ScenarioType.TEXT)
-                                    && !filledScenario.getComment().equals("")){//TODO many code duplicates make it simple
-                                commentReportValue.getComments().put(filledScenario.getScenario(), new FormattedComment(filledScenario.getComment()));
-                            }
-                            if (filledScenario.getScenario().getScenarioType() == ScenarioType.AUSWAHL) {
-                                if (commentReportValue.getValue() < filledScenario.getValue()) {
-                                    commentReportValue.setValue(filledScenario.getValue());
-                                }
-                            }
-                        }
-                    } else {//handling Ressort stuff
-                        //remove existing branch from the list for the missing branches
-                        missingRessortBranches.remove(branchQuestionnaire.getBranch());
-
-                        RessortCommentsReportValue ressortCommentsReportValue = branchRessortCommentsReportValue.get(branchQuestionnaire.getBranch());
-                        if(ressortCommentsReportValue == null){
-                            ressortCommentsReportValue = new RessortCommentsReportValue();
-                            branchRessortCommentsReportValue.put(branchQuestionnaire.getBranch(), ressortCommentsReportValue);
-                        }
-
-                        HashMap<Scenario, FormattedComment> comments = ressortCommentsReportValue.getComments(questionnaire.getRessort());
-                        if(comments == null){
-                            comments = new HashMap<>();
-                            ressortCommentsReportValue.getRessortComments().put(questionnaire.getRessort(), comments);
-                        }
-
-                        for (FilledScenario filledScenario : branchQuestionnaire.getFilledScenarios()) {
-                            if((filledScenario.getValue() > 1 || filledScenario.getScenario().getScenarioType() == ScenarioType.TEXT)
-                                    && !filledScenario.getComment().equals("")){
-                                comments.put(filledScenario.getScenario(), new FormattedComment(filledScenario.getComment()));
-                            }
-
-                            if (filledScenario.getScenario().getScenarioType() == ScenarioType.AUSWAHL) {
-                                if (ressortCommentsReportValue.getValue() < filledScenario.getValue()) {
-                                    ressortCommentsReportValue.setValue(filledScenario.getValue());
-                                }
-                            }
-                        }
-                    }
-                }
+    /**
+     * Formats all comments by highlighting the changes to the old comments of the same scenario.
+     * @param formattedComments
+     * @param oldFormattedComments may be null
+     */
+    private void formatComments(HashMap<Scenario, FormattedComment> formattedComments, HashMap<Scenario, FormattedComment> oldFormattedComments){
+        formattedComments.forEach((scenario, formattedComment) -> {
+            FormattedComment oldFormattedComment = (oldFormattedComments == null) ? null : oldFormattedComments.get(scenario);
+            if(oldFormattedComment == null){
+                formattedComment.formatCommentWithoutOldComment();
+            }else{
+                formattedComment.formatCommentFromOldComment(oldFormattedComment.getComment());
             }
+        });
+    }
+
+    private ReportBranchValue createReportBranchValue(Report report, Branch branch, FederalState federalState, Ressort ressort, ReportValue reportValue){
+        return ReportBranchValue.builder()
+                .report(report)
+                .branch(branch)
+                .federalState(federalState)
+                .ressort(ressort)
+                .value(reportValue.getValue())
+                .valueChangedType(reportValue.getValueChangedType()).build();
+    }
+
+    private ReportComment createReportComment(Report report, Branch branch, Scenario scenario, FederalState federalState, Ressort ressort, FormattedComment formattedComment){
+        StringJoiner commentPartLengths = new StringJoiner(",");
+        for(String commentPart: formattedComment.getCommentParts()){
+            commentPartLengths.add(String.valueOf(commentPart.length()));
         }
 
-        // add ReportValue for all empty branches
-        for(Branch missingBranch: missingRessortBranches){
-            branchRessortCommentsReportValue.put(missingBranch, new RessortCommentsReportValue());
+        return ReportComment.builder()
+                .report(report)
+                .branch(branch)
+                .scenario(scenario)
+                .federalState(federalState)
+                .ressort(ressort)
+                .comment(formattedComment.getComment())
+                .commentPartLengths(commentPartLengths.toString())
+                .firstPartYellow(formattedComment.isFirstPartYellow()).build();
+    }
+
+    private FormattedComment createFormattedComment(ReportComment reportComment){
+        String comment = reportComment.getComment();
+        List<String> commentParts = new ArrayList<>();
+
+        int start = 0;
+        if(!reportComment.getCommentPartLengths().isEmpty()){
+            for(String commentPartLength: reportComment.getCommentPartLengths().split(",")){
+                int end = start + Integer.parseInt(commentPartLength);
+                commentParts.add(comment.substring(start, end));
+                start = end;
+            }
         }
+
+        return new FormattedComment(comment, commentParts, reportComment.isFirstPartYellow());
     }
 
+    /**
+     * Fills the given hashMaps with the values and comments of all branches of the given report.
+     * Every branch gets a RessortCommentsReportValue, also if no ressort reports on it.
+     * @param report
+     * @param branchRessortCommentsReportValue
+     * @param federalStateBranchCommentReportValueHashMap
+     */
+    private void fillBranchReportValuesFromReport(Report report, HashMap<Branch, RessortCommentsReportValue> branchRessortCommentsReportValue,
+                                                  HashMap<Branch, HashMap<FederalState, CommentReportValue>> federalStateBranchCommentReportValueHashMap){
+        for(Branch branch: branchService.getAllBranches()){
+            branchRessortCommentsReportValue.put(branch, new RessortCommentsReportValue());
+        }
+
+        for(ReportFilledScenario reportFilledScenario: filledScenarioService.getFilledScenariosWithQuestionnaireForReport(report)){
+            Questionnaire questionnaire = reportFilledScenario.getQuestionnaire();
+            FilledScenario filledScenario = reportFilledScenario.getFilledScenario();
+            Branch branch = filledScenario.getBranchQuestionnaire().getBranch();
+
+            ReportValue reportValue;
+            HashMap<Scenario, FormattedComment> comments;
+            if(questionnaire.getFederalState() != null){
+                CommentReportValue commentReportValue = federalStateBranchCommentReportValueHashMap.computeIfAbsent(branch, b -> new HashMap<>())
+                        .computeIfAbsent(questionnaire.getFederalState(), federalState -> new CommentReportValue());
+                reportValue = commentReportValue;
+                comments = commentReportValue.getComments();
+            }else{//handling Ressort stuff
+                RessortCommentsReportValue ressortCommentsReportValue = branchRessortCommentsReportValue.get(branch);
+                reportValue = ressortCommentsReportValue;
+                comments = ressortCommentsReportValue.getRessortComments().computeIfAbsent(questionnaire.getRessort(), ressort -> new HashMap<>());
+            }
+
+            if((filledScenario.getValue() > 1 || filledScenario.getScenario().getScenarioType() == ScenarioType.TEXT)
+                    && !filledScenario.getComment().equals("")){
+                comments.put(filledScenario.getScenario(), new FormattedComment(filledScenario.getComment()));
+            }
+
+            if (filledScenario.getScenario().getScenarioType() == ScenarioType.AUSWAHL) {
+                if (reportValue.getValue() < filledScenario.getValue()) {
+                    reportValue.setValue(filledScenario.getValue());
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates the SectorReportValueAccessor for the given report from its precomputed sector report values.
+     * @param report
+     * @return SectorReportValueAccessor or null if the report is null
+     */
+    @Transactional
     public SectorReportValueAccessor createSectorReportValueAccessor(Report report){
 
         if(report == null){
             return null;
         }
 
+        persistReportValuesIfOutdated(report);
+
+        HashMap<Sector, HashMap<FederalState, ReportValue>> federalStateSectorReportValueHashMap = new HashMap<>();
+        HashMap<Sector, ReportValue> ressortSectorReportValueHashMap = new HashMap<>();
+
+        for(ReportSectorValue reportSectorValue: reportSectorValueRepository.findAllByReport(report)){
+            ReportValue reportValue = new ReportValue(reportSectorValue.getValue(), reportSectorValue.getValueChangedType());
+
+            if(reportSectorValue.getFederalState() != null){
+                federalStateSectorReportValueHashMap.computeIfAbsent(reportSectorValue.getSector(), sector -> new HashMap<>())
+                        .put(reportSectorValue.getFederalState(), reportValue);
+            }else{
+                ressortSectorReportValueHashMap.put(reportSectorValue.getSector(), reportValue);
+            }
+        }
+
+        return new SectorReportValueAccessor(federalStateSectorReportValueHashMap, ressortSectorReportValueHashMap);
+    }
+
+    /**
+     * Computes all values of the sector report of the given report, including the change types to the old report,
+     * and saves them.
+     * @param report
+     * @param oldReport the previous report, may be null
+     */
+    private void persistSectorReportValues(Report report, Report oldReport){
         HashMap<Sector, HashMap<FederalState, ReportValue>> federalStateSectorReportValueHashMap = new HashMap<>();
         HashMap<Sector, ReportValue> ressortSectorReportValueHashMap = new HashMap<>();
 
+        computeSectorReportValues(report, oldReport, federalStateSectorReportValueHashMap, ressortSectorReportValueHashMap);
+
+        List<ReportSectorValue> reportSectorValues = new ArrayList<>();
+        federalStateSectorReportValueHashMap.forEach((sector, federalStateReportValueHashMap) -> {
+            federalStateReportValueHashMap.forEach((federalState, reportValue) -> {
+                reportSectorValues.add(createReportSectorValue(report, sector, federalState, reportValue));
+            });
+        });
+        ressortSectorReportValueHashMap.forEach((sector, reportValue) -> {
+            reportSectorValues.add(createReportSectorValue(report, sector, null, reportValue));
+        });
+
+        reportSectorValueRepository.saveAll(reportSectorValues);
+    }
+
+    private ReportSectorValue createReportSectorValue(Report report, Sector sector, FederalState federalState, ReportValue reportValue){
+        return ReportSectorValue.builder()
+                .report(report)
+                .sector(sector)
+                .federalState(federalState)
+                .value(reportValue.getValue())
+                .valueChangedType(reportValue.getValueChangedType()).build();
+    }
+
+    private void computeSectorReportValues(Report report, Report oldReport, HashMap<Sector, HashMap<FederalState, ReportValue>> federalStateSectorReportValueHashMap,
+                                           HashMap<Sector, ReportValue> ressortSectorReportValueHashMap){
         fillSectorReportValueHashMapsFromReport(report, federalStateSectorReportValueHashMap, ressortSectorReportValueHashMap);
 
         HashMap<Sector, HashMap<FederalState, ReportValue>> oldFederalStateSectorReportValuesHashMap = new HashMap<>();
         HashMap<Sector, ReportValue> oldRessortSectorReportValueHashMap = new HashMap<>();
-        Report oldReport = reportRepository.findTopByIdLessThanOrderByIdDesc(report.getId());
 
         if(oldReport != null) {
             fillSectorReportValueHashMapsFromReport(oldReport, oldFederalStateSectorReportValuesHashMap, oldRessortSectorReportValueHashMap);
@@ -225,8 +442,6 @@ public class ReportService {
             ReportValue oldSectorReportValue = oldRessortSectorReportValueHashMap.get(sector);
             setValueChangedTypeByOldValue(sectorReportValue, oldSectorReportValue);
         });
-
-        return new SectorReportValueAccessor(federalStateSectorReportValueHashMap, ressortSectorReportValueHashMap);
     }
 
     private void setValueChangedTypeByOldValue(ReportValue sectorReportValue, ReportValue oldSectorReportValue) {
@@ -246,60 +461,41 @@ public class ReportService {
         }
     }
 
+    /**
+     * Fills the given hashMaps with the maximum value of every sector for every federal state and for all ressorts.
+     * The maximums are aggregated by the database in a single query.
+     * @param report
+     * @param federalStateSectorReportValuesHashMap
+     * @param ressortSectorReportValueHashMap
+     */
     private void fillSectorReportValueHashMapsFromReport(Report report, HashMap<Sector, HashMap<FederalState, ReportValue>> federalStateSectorReportValuesHashMap,
                                                          HashMap<Sector, ReportValue> ressortSectorReportValueHashMap) {
-        //List of all Sectors missing in all ressorts
-        //delete all existing in the ressort part of the for loop
-        List<Sector> missingRessortSectors = sectorService.getAllSectors();
-
-        for(Questionnaire questionnaire: report.getQuestionnaires()){
-            for(BranchQuestionnaire branchQuestionnaire: questionnaire.getBranchQuestionnaires()){
-                ReportValue sectorReportValue;
-                //handle stuff for the federalStateQuestionnaires
-                if(questionnaire.getFederalState()!= null) {
-                    HashMap<FederalState, ReportValue> federalStateReportValueHashMap = federalStateSectorReportValuesHashMap.get(branchQuestionnaire.getBranch().getSector());
-
-                    //add the hashMap to the hashMap if not exists
-                    if (federalStateReportValueHashMap == null) {
-                        federalStateReportValueHashMap = new HashMap<>();
-                        federalStateSectorReportValuesHashMap.put(branchQuestionnaire.getBranch().getSector(), federalStateReportValueHashMap);
-                    }
-
-                    sectorReportValue = federalStateReportValueHashMap.get(questionnaire.getFederalState());
-                    //add sectorReportValues to the hashMap if not exists
-                    if (sectorReportValue == null) {
-                        sectorReportValue = new ReportValue();
-                        federalStateReportValueHashMap.put(questionnaire.getFederalState(), sectorReportValue);
-                    }
-
-                }else{//handle stuff for the ressortQuestionnaires
-                    //remove existing sector from the list for the missing sectors
-                    missingRessortSectors.remove(branchQuestionnaire.getBranch().getSector());
-
-                    sectorReportValue = ressortSectorReportValueHashMap.get(branchQuestionnaire.getBranch().getSector());
-                    //add sectorReportValues to the hashMap if not exists
-                    if (sectorReportValue == null) {
-                        sectorReportValue = new ReportValue();
-                        ressortSectorReportValueHashMap.put(branchQuestionnaire.getBranch().getSector(), sectorReportValue);
-                    }
-                }
-
-                //check for each filledScenario if the value is greater than the value of zhe sectorReportValues
-                //override if this is true
-                for (FilledScenario filledScenario : branchQuestionnaire.getFilledScenarios()) {
-                    if (filledScenario.getScenario().getScenarioType() == ScenarioType.AUSWAHL) {
-                        if (sectorReportValue.getValue() < filledScenario.getValue()) {
-                            sectorReportValue.setValue(filledScenario.getValue());
-                        }
-                    }
-                }
-
+        HashMap<Long, Sector> sectorHashMap = new HashMap<>();
+        HashMap<Long, FederalState> federalStateHashMap = new HashMap<>();
+        List<FederalState> federalStates = federalStateService.getAllFederalStates();
+
+        // add ReportValues for all sectors, they stay 0 if there is no value
+        for(Sector sector: sectorService.getAllSectors()){
+            sectorHashMap.put(sector.getId(), sector);
+            ressortSectorReportValueHashMap.put(sector, new ReportValue());
+
+            HashMap<FederalState, ReportValue> federalStateReportValueHashMap = new HashMap<>();
+            for(FederalState federalState: federalStates){
+                federalStateHashMap.put(federalState.getId(), federalState);
+                federalStateReportValueHashMap.put(federalState, new ReportValue());
             }
+            federalStateSectorReportValuesHashMap.put(sector, federalStateReportValueHashMap);
         }
 
-        // add ReportValue for all empty sectors
-        for(Sector missingSector: missingRessortSectors){
-            ressortSectorReportValueHashMap.put(missingSector, new ReportValue());
+        for(SectorMaxValue sectorMaxValue: filledScenarioService.getMaxValuesBySectorAndFederalStateForReport(report)){
+            Sector sector = sectorHashMap.get(sectorMaxValue.getSectorId());
+            ReportValue sectorReportValue;
+            if(sectorMaxValue.getFederalStateId() != null){
+                sectorReportValue = federalStateSectorReportValuesHashMap.get(sector).get(federalStateHashMap.get(sectorMaxValue.getFederalStateId()));
+            }else{
+                sectorReportValue = ressortSectorReportValueHashMap.get(sector);
+            }
+            sectorReportValue.setValue(sectorMaxValue.getValue());
         }
     }
 
@@ -1,18 +1,25 @@
 package de.thb.kritis_elfe.service;
 
 import de.thb.kritis_elfe.controller.form.RessortsForm;
+import de.thb.kritis_elfe.entity.Branch;
 import de.thb.kritis_elfe.entity.Ressort;
 import de.thb.kritis_elfe.repository.RessortRepository;
+import de.thb.kritis_elfe.service.questionnaire.QuestionnaireProvisioningService;
 import lombok.AllArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Service
 @AllArgsConstructor
 public class RessortService {
     private final RessortRepository ressortRepository;
+    private final QuestionnaireProvisioningService questionnaireProvisioningService;
 
     public List<Ressort> getAllRessorts(){return ressortRepository.findAll();}
 
@@ -24,14 +31,42 @@ public class RessortService {
 
     /**
      * Saves the ressort from given form and deletes all missing ressorts.
+     * Increases the branches version of every ressort with changed branches
+     * and adds the new branches to the questionnaires of these ressorts.
      * @param ressortsForm
      */
     public void resetRessortsByRessortsForm(RessortsForm ressortsForm){
+        Map<Long, Ressort> existingRessorts = new HashMap<>();
         for(Ressort ressort: ressortRepository.findAll()){
             if(!ressortsForm.getRessorts().contains(ressort)){
                 ressortRepository.delete(ressort);
+            }else{
+                existingRessorts.put(ressort.getId(), ressort);
+            }
+        }
+
+        boolean branchesChanged = false;
+        for(Ressort ressort: ressortsForm.getRessorts()){
+            Ressort existingRessort = existingRessorts.get(ressort.getId());
+            if(existingRessort != null){
+                ressort.setBranchesVersion(existingRessort.getBranchesVersion());
+                if(!getBranchSet(existingRessort).equals(getBranchSet(ressort))){
+                    ressort.setBranchesVersion(ressort.getBranchesVersion() + 1);
+                    branchesChanged = true;
+                }
             }
         }
         ressortRepository.saveAll(ressortsForm.getRessorts());
+
+        if(branchesChanged){
+            questionnaireProvisioningService.provisionLiveQuestionnaires();
+        }
+    }
+
+    private Set<Branch> getBranchSet(Ressort ressort){
+        if(ressort.getBranches() == null){
+            return new HashSet<>();
+        }
+        return new HashSet<>(ressort.getBranches());
     }
 }
@@ -3,6 +3,7 @@ package de.thb.kritis_elfe.service;
 
 import de.thb.kritis_elfe.entity.Scenario;
 import de.thb.kritis_elfe.repository.ScenarioRepository;
+import de.thb.kritis_elfe.service.questionnaire.QuestionnaireProvisioningService;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import org.springframework.stereotype.Service;
@@ -14,6 +15,7 @@ import java.util.List;
 @AllArgsConstructor
 public class ScenarioService {
     private final ScenarioRepository scenarioRepository;
+    private final QuestionnaireProvisioningService questionnaireProvisioningService;
 
     public Scenario getScenarioByDescriptionAndActive(String description){
         return scenarioRepository.findByDescriptionAndActive(description, true);
@@ -21,5 +23,16 @@ public class ScenarioService {
 
     public List<Scenario> getAllScenariosByActiveTrue(){return scenarioRepository.findByActive(true);}
 
-    public Scenario createScenario(Scenario scenario){return scenarioRepository.save(scenario);}
+    /**
+     * Saves the scenario and adds it to all live questionnaires, if it is active.
+     * @param scenario
+     * @return
+     */
+    public Scenario createScenario(Scenario scenario){
+        scenario = scenarioRepository.save(scenario);
+        if(scenario.isActive()){
+            questionnaireProvisioningService.provisionLiveQuestionnaires();
+        }
+        return scenario;
+    }
 }
@@ -3,6 +3,7 @@ package de.thb.kritis_elfe.service.helper.report;
 import de.thb.kritis_elfe.entity.Branch;
 import de.thb.kritis_elfe.entity.FederalState;
 import de.thb.kritis_elfe.entity.Ressort;
+import de.thb.kritis_elfe.entity.Sector;
 
 import java.util.HashMap;
 import java.util.HashSet;
@@ -12,14 +13,18 @@ public class BranchReportValueAccessor {
     private HashMap<Branch, HashMap<FederalState, CommentReportValue>> federalStateBranchCommentReportValueHashMap;
     private HashMap<Branch, RessortCommentsReportValue> branchRessortCommentsReportValue;
     private Set<Ressort> ressorts;
+    private HashMap<Sector, Set<Ressort>> sectorRessorts;
 
     public BranchReportValueAccessor(HashMap<Branch, HashMap<FederalState, CommentReportValue>> federalStateBranchCommentReportValueHashMap, HashMap<Branch, RessortCommentsReportValue> branchRessortCommentsReportValue) {
         this.federalStateBranchCommentReportValueHashMap = federalStateBranchCommentReportValueHashMap;
         this.branchRessortCommentsReportValue = branchRessortCommentsReportValue;
         ressorts = new HashSet<>();
+        sectorRessorts = new HashMap<>();
         //set Ressorts
         branchRessortCommentsReportValue.forEach((branch, ressortCommentsReportValue) -> {
             ressorts.addAll(ressortCommentsReportValue.getRessortComments().keySet());
+            sectorRessorts.computeIfAbsent(branch.getSector(), sector -> new HashSet<>())
+                    .addAll(ressortCommentsReportValue.getRessortComments().keySet());
         });
     }
 
@@ -35,5 +40,14 @@ public class BranchReportValueAccessor {
         return ressorts;
     }
 
+    /**
+     * Returns all ressorts which report on at least one branch of the given sector.
+     * @param sector
+     * @return
+     */
+    public Set<Ressort> getRessorts(Sector sector){
+        return sectorRessorts.getOrDefault(sector, new HashSet<>());
+    }
+
 
 }
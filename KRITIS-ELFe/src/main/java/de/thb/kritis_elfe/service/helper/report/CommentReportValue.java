@@ -1,6 +1,7 @@
 package de.thb.kritis_elfe.service.helper.report;
 
 import de.thb.kritis_elfe.entity.Scenario;
+import de.thb.kritis_elfe.enums.ValueChangedType;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -9,11 +10,15 @@ import java.util.List;
 public class CommentReportValue extends ReportValue{
     private HashMap<Scenario, FormattedComment> comments;
 
-    public CommentReportValue(short value) {
-        super(value);
+    public CommentReportValue(short value, ValueChangedType valueChangedType) {
+        super(value, valueChangedType);
         this.comments = new HashMap<>();
     }
 
+    public CommentReportValue(short value) {
+        this(value, ValueChangedType.EQUAL);
+    }
+
     public CommentReportValue(){
         this((short)0);
     }
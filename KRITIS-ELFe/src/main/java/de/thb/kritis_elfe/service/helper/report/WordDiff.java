@@ -0,0 +1,225 @@
+package de.thb.kritis_elfe.service.helper.report;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Word based diff of two texts with the algorithm of Myers in linear space.
+ * Words are separated by whitespace, changes in the whitespace are ignored.
+ */
+public class WordDiff {
+    private static final Pattern WORD_PATTERN = Pattern.compile("\\S+");
+
+    private final int[] oldWords;
+    private final int[] newWords;
+    private final boolean[] inserted;
+
+    private WordDiff(int[] oldWords, int[] newWords){
+        this.oldWords = oldWords;
+        this.newWords = newWords;
+        this.inserted = new boolean[newWords.length];
+    }
+
+    /**
+     * Returns the ranges of the new text which are not part of the old text.
+     * Every range starts at the beginning of a word and ends at the end of a word,
+     * inserted words which directly follow each other are in the same range.
+     * @param oldText
+     * @param newText
+     * @return List of [start, end) indices inside the new text
+     */
+    public static List<int[]> getInsertedRanges(String oldText, String newText){
+        HashMap<String, Integer> wordIds = new HashMap<>();
+        List<int[]> newWordRanges = new ArrayList<>();
+
+        int[] oldWords = tokenize(oldText, wordIds, null);
+        int[] newWords = tokenize(newText, wordIds, newWordRanges);
+
+        WordDiff wordDiff = new WordDiff(oldWords, newWords);
+        wordDiff.diff(0, oldWords.length, 0, newWords.length);
+
+        List<int[]> insertedRanges = new ArrayList<>();
+        int[] currentRange = null;
+        for(int i = 0; i < newWords.length; i++){
+            if(wordDiff.inserted[i]){
+                if(currentRange == null){
+                    currentRange = new int[]{newWordRanges.get(i)[0], newWordRanges.get(i)[1]};
+                    insertedRanges.add(currentRange);
+                }else{
+                    currentRange[1] = newWordRanges.get(i)[1];
+                }
+            }else{
+                currentRange = null;
+            }
+        }
+        return insertedRanges;
+    }
+
+    /**
+     * Splits the text into words and maps every distinct word to the same id.
+     * @param text
+     * @param wordIds ids of all words found so far
+     * @param wordRanges filled with the [start, end) indices of every word if not null
+     * @return the ids of all words of the text
+     */
+    private static int[] tokenize(String text, HashMap<String, Integer> wordIds, List<int[]> wordRanges){
+        List<Integer> words = new ArrayList<>();
+        Matcher matcher = WORD_PATTERN.matcher(text);
+        while(matcher.find()){
+            Integer wordId = wordIds.computeIfAbsent(matcher.group(), word -> wordIds.size());
+            words.add(wordId);
+            if(wordRanges != null){
+                wordRanges.add(new int[]{matcher.start(), matcher.end()});
+            }
+        }
+
+        int[] wordArray = new int[words.size()];
+        for(int i = 0; i < wordArray.length; i++){
+            wordArray[i] = words.get(i);
+        }
+        return wordArray;
+    }
+
+    /**
+     * Marks all new words between newStart and newEnd, which are not part of the old words between oldStart and oldEnd.
+     */
+    private void diff(int oldStart, int oldEnd, int newStart, int newEnd){
+        // skip the common prefix and suffix
+        while(oldStart < oldEnd && newStart < newEnd && oldWords[oldStart] == newWords[newStart]){
+            oldStart++;
+            newStart++;
+        }
+        while(oldStart < oldEnd && newStart < newEnd && oldWords[oldEnd - 1] == newWords[newEnd - 1]){
+            oldEnd--;
+            newEnd--;
+        }
+
+        if(newStart == newEnd){
+            return;
+        }
+
+        if(oldStart == oldEnd){
+            markInserted(newStart, newEnd);
+        }else if(oldEnd - oldStart == 1){
+            markInserted(newStart, newEnd);
+            for(int i = newStart; i < newEnd; i++){
+                if(newWords[i] == oldWords[oldStart]){
+                    inserted[i] = false;
+                    break;
+                }
+            }
+        }else if(newEnd - newStart == 1){
+            markInserted(newStart, newEnd);
+            for(int i = oldStart; i < oldEnd; i++){
+                if(oldWords[i] == newWords[newStart]){
+                    inserted[newStart] = false;
+                    break;
+                }
+            }
+        }else{
+            bisect(oldStart, oldEnd, newStart, newEnd);
+        }
+    }
+
+    /**
+     * Finds the middle snake of the shortest edit script and diffs both halves on their own.
+     */
+    private void bisect(int oldStart, int oldEnd, int newStart, int newEnd){
+        int oldLength = oldEnd - oldStart;
+        int newLength = newEnd - newStart;
+        int maxD = (oldLength + newLength + 1) / 2;
+        int vOffset = maxD;
+        int vLength = 2 * maxD;
+        int[] forward = new int[vLength];
+        int[] reverse = new int[vLength];
+        Arrays.fill(forward, -1);
+        Arrays.fill(reverse, -1);
+        forward[vOffset + 1] = 0;
+        reverse[vOffset + 1] = 0;
+
+        int delta = oldLength - newLength;
+        // if the total number of words is odd, the forward path collides with the reverse path
+        boolean front = (delta % 2 != 0);
+        int forwardKStart = 0;
+        int forwardKEnd = 0;
+        int reverseKStart = 0;
+        int reverseKEnd = 0;
+
+        for(int d = 0; d < maxD; d++){
+            for(int k = -d + forwardKStart; k <= d - forwardKEnd; k += 2){
+                int kOffset = vOffset + k;
+                int x;
+                if(k == -d || (k != d && forward[kOffset - 1] < forward[kOffset + 1])){
+                    x = forward[kOffset + 1];
+                }else{
+                    x = forward[kOffset - 1] + 1;
+                }
+                int y = x - k;
+                while(x < oldLength && y < newLength && oldWords[oldStart + x] == newWords[newStart + y]){
+                    x++;
+                    y++;
+                }
+                forward[kOffset] = x;
+
+                if(x > oldLength){
+                    forwardKEnd += 2;
+                }else if(y > newLength){
+                    forwardKStart += 2;
+                }else if(front){
+                    int reverseKOffset = vOffset + delta - k;
+                    if(reverseKOffset >= 0 && reverseKOffset < vLength && reverse[reverseKOffset] != -1
+                            && x >= oldLength - reverse[reverseKOffset]){
+                        split(oldStart, oldEnd, newStart, newEnd, x, y);
+                        return;
+                    }
+                }
+            }
+
+            for(int k = -d + reverseKStart; k <= d - reverseKEnd; k += 2){
+                int kOffset = vOffset + k;
+                int x;
+                if(k == -d || (k != d && reverse[kOffset - 1] < reverse[kOffset + 1])){
+                    x = reverse[kOffset + 1];
+                }else{
+                    x = reverse[kOffset - 1] + 1;
+                }
+                int y = x - k;
+                while(x < oldLength && y < newLength
+                        && oldWords[oldEnd - x - 1] == newWords[newEnd - y - 1]){
+                    x++;
+                    y++;
+                }
+                reverse[kOffset] = x;
+
+                if(x > oldLength){
+                    reverseKEnd += 2;
+                }else if(y > newLength){
+                    reverseKStart += 2;
+                }else if(!front){
+                    int forwardKOffset = vOffset + delta - k;
+                    if(forwardKOffset >= 0 && forwardKOffset < vLength && forward[forwardKOffset] != -1){
+                        int forwardX = forward[forwardKOffset];
+                        int forwardY = vOffset + forwardX - forwardKOffset;
+                        if(forwardX >= oldLength - x){
+                            split(oldStart, oldEnd, newStart, newEnd, forwardX, forwardY);
+                            return;
+                        }
+                    }
+                }
+            }
+        }
+
+        // there are no common words
+        markInserted(newStart, newEnd);
+    }
+
+    private void split(int oldStart, int oldEnd, int newStart, int newEnd, int x, int y){
+        diff(oldStart, oldStart + x, newStart, newStart + y);
+        diff(oldStart + x, oldEnd, newStart + y, newEnd);
+    }
+
+    private void markInserted(int newStart, int newEnd){
+        Arrays.fill(inserted, newStart, newEnd, true);
+    }
+}
@@ -0,0 +1,593 @@
+package de.thb.kritis_elfe.service.helper.word;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Reads the text of a word document (docx) directly from the zip stream, without holding the document in memory.
+ * The text of the body equals the one of the XWPFWordExtractor of POI, but headers, footers, comments and footnotes are left out.
+ * Form fields are read from their structure instead: checkboxes of content controls and legacy form fields are written as markers
+ * with their state, the content of inline content controls and legacy text fields is enclosed by markers.
+ */
+public class WordDocumentReader {
+    // markers of the form fields from the private use area of unicode, they are removed from the text of the document
+    public static final char UNCHECKED_BOX = '\uE000';
+    public static final char CHECKED_BOX = '\uE001';
+    public static final char TEXT_FIELD_START = '\uE002';
+    public static final char TEXT_FIELD_END = '\uE003';
+
+    private static final String WORD_NAMESPACE = "http://schemas.openxmlformats.org/wordprocessingml/2006/main";
+    private static final String WORD_2010_NAMESPACE = "http://schemas.microsoft.com/office/word/2010/wordml";
+    private static final String DOCUMENT_ENTRY = "word/document.xml";
+
+    private static final XMLInputFactory XML_INPUT_FACTORY = createXmlInputFactory();
+
+    private final XMLStreamReader reader;
+    // legacy form fields, which have begun and not yet ended, true for text fields
+    private final Deque<Boolean> openFields = new ArrayDeque<>();
+
+    private WordDocumentReader(XMLStreamReader reader) {
+        this.reader = reader;
+    }
+
+    /**
+     * Reads the text of the body of the given document with the markers of its form fields.
+     * @param inputStream the docx file, it is not closed
+     * @param textStart the text before its first occurrence is left out, if it occurs
+     * @return the text, null if the file doesn't contain a word/document.xml
+     * @throws IOException
+     */
+    public static String readText(InputStream inputStream, String textStart) throws IOException {
+        ZipInputStream zipInputStream = new ZipInputStream(inputStream);
+        ZipEntry zipEntry;
+        while((zipEntry = zipInputStream.getNextEntry()) != null){
+            if(zipEntry.getName().equals(DOCUMENT_ENTRY)){
+                try {
+                    XMLStreamReader reader = XML_INPUT_FACTORY.createXMLStreamReader(zipInputStream);
+                    try {
+                        return new WordDocumentReader(reader).readDocument(textStart);
+                    } finally {
+                        reader.close();
+                    }
+                } catch (XMLStreamException e) {
+                    throw new IOException(e);
+                }
+            }
+        }
+        return null;
+    }
+
+    private static XMLInputFactory createXmlInputFactory(){
+        XMLInputFactory xmlInputFactory = XMLInputFactory.newInstance();
+        xmlInputFactory.setProperty(XMLInputFactory.IS_COALESCING, true);
+        xmlInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        xmlInputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        return xmlInputFactory;
+    }
+
+    private String readDocument(String textStart) throws XMLStreamException {
+        StringBuilder text = new StringBuilder();
+        boolean textStartFound = false;
+        int searchStart = 0;
+
+        reader.nextTag();
+        while(nextChild()){
+            if(!isWordElement("body")){
+                skipElement();
+                continue;
+            }
+
+            while(nextChild()){
+                if(isWordElement("p")){
+                    text.append(readParagraph(false)).append('\n');
+                }else if(isWordElement("tbl")){
+                    text.append(readTable()).append('\n');
+                }else if(isWordElement("sdt")){
+                    text.append(readBlockContentControl()).append('\n');
+                }else{
+                    skipElement();
+                }
+
+                if(!textStartFound){
+                    int textStartIndex = text.indexOf(textStart, searchStart);
+                    if(textStartIndex >= 0){
+                        text.delete(0, textStartIndex);
+                        textStartFound = true;
+                    }else{
+                        searchStart = Math.max(0, text.length() - textStart.length() + 1);
+                    }
+                }
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Reads the text of the runs and inline content controls of the paragraph.
+     * @param skipDeletedRuns leaves out deleted runs like XWPFParagraph.getText()
+     */
+    private String readParagraph(boolean skipDeletedRuns) throws XMLStreamException {
+        StringBuilder text = new StringBuilder();
+        readRunElements(text, skipDeletedRuns);
+        return text.toString();
+    }
+
+    private void readRunElements(StringBuilder text, boolean skipDeletedRuns) throws XMLStreamException {
+        while(nextChild()){
+            if(isWordElement("r")){
+                readRun(text, skipDeletedRuns);
+            }else if(isWordElement("hyperlink") || isWordElement("fldSimple") || isWordElement("ins")
+                    || isWordElement("del") || isWordElement("moveFrom") || isWordElement("moveTo")){
+                while(nextChild()){
+                    if(isWordElement("r")){
+                        readRun(text, skipDeletedRuns);
+                    }else{
+                        skipElement();
+                    }
+                }
+            }else if(isWordElement("smartTag")){
+                readRunElements(text, skipDeletedRuns);
+            }else if(isWordElement("sdt")){
+                text.append(readInlineContentControl());
+            }else{
+                skipElement();
+            }
+        }
+    }
+
+    private void readRun(StringBuilder text, boolean skipDeletedRun) throws XMLStreamException {
+        if(skipDeletedRun && reader.getAttributeValue(WORD_NAMESPACE, "rsidDel") != null){
+            skipElement();
+        }else{
+            text.append(readRun());
+        }
+    }
+
+    private String readRun() throws XMLStreamException {
+        StringBuilder text = new StringBuilder();
+        // the texts of text boxes are added behind the run, first the ones of VML pictures
+        List<String> pictTexts = new ArrayList<>();
+        List<String> drawingTexts = new ArrayList<>();
+
+        while(nextChild()){
+            if(!WORD_NAMESPACE.equals(reader.getNamespaceURI())){
+                skipElement();
+                continue;
+            }
+
+            switch (reader.getLocalName()) {
+                case "t":
+                case "delText":
+                case "delInstrText":
+                    appendWithoutMarkers(text, reader.getElementText());
+                    break;
+                case "fldChar":
+                    readFieldCharacter(text);
+                    break;
+                case "tab":
+                case "ptab":
+                    text.append('\t');
+                    skipElement();
+                    break;
+                case "br":
+                case "cr":
+                    text.append('\n');
+                    skipElement();
+                    break;
+                case "footnoteReference":
+                    text.append("[footnoteRef:").append(getIdAttribute()).append(']');
+                    skipElement();
+                    break;
+                case "endnoteReference":
+                    text.append("[endnoteRef:").append(getIdAttribute()).append(']');
+                    skipElement();
+                    break;
+                case "pict":
+                    readDescendantTexts(pictTexts);
+                    break;
+                case "drawing":
+                    readDescendantTexts(drawingTexts);
+                    break;
+                default:
+                    skipElement();
+            }
+        }
+
+        StringBuilder pictureText = new StringBuilder();
+        for(List<String> texts: List.of(pictTexts, drawingTexts)){
+            for(String descendantText: texts){
+                if(pictureText.length() > 0){
+                    pictureText.append('\n');
+                }
+                pictureText.append(descendantText);
+            }
+        }
+        if(pictureText.length() > 0){
+            text.append('\n').append(pictureText);
+        }
+        return text.toString();
+    }
+
+    private static void appendWithoutMarkers(StringBuilder text, String content){
+        for(int i = 0; i < content.length(); i++){
+            char character = content.charAt(i);
+            if(character < UNCHECKED_BOX || character > TEXT_FIELD_END){
+                text.append(character);
+            }
+        }
+    }
+
+    /**
+     * Reads the begin or end of a field. A legacy checkbox is written as marker with its state,
+     * the result of a legacy text field is enclosed by markers until the end of the field.
+     */
+    private void readFieldCharacter(StringBuilder text) throws XMLStreamException {
+        String fieldCharacterType = reader.getAttributeValue(WORD_NAMESPACE, "fldCharType");
+        if("end".equals(fieldCharacterType)){
+            Boolean textField = openFields.pollFirst();
+            if(textField != null && textField){
+                text.append(TEXT_FIELD_END);
+            }
+            skipElement();
+            return;
+        }
+        if(!"begin".equals(fieldCharacterType)){
+            skipElement();
+            return;
+        }
+
+        boolean textField = false;
+        while(nextChild()){
+            if(!isWordElement("ffData")){
+                skipElement();
+                continue;
+            }
+            while(nextChild()){
+                if(isWordElement("checkBox")){
+                    text.append(readFormFieldCheckBox() ? CHECKED_BOX : UNCHECKED_BOX);
+                }else if(isWordElement("textInput")){
+                    textField = true;
+                    skipElement();
+                }else{
+                    skipElement();
+                }
+            }
+        }
+
+        openFields.push(textField);
+        if(textField){
+            text.append(TEXT_FIELD_START);
+        }
+    }
+
+    /**
+     * @return the state of the checkbox, its default state if it wasn't changed
+     */
+    private boolean readFormFieldCheckBox() throws XMLStreamException {
+        Boolean checked = null;
+        boolean checkedByDefault = false;
+        while(nextChild()){
+            if(isWordElement("checked")){
+                checked = isOn(reader.getAttributeValue(WORD_NAMESPACE, "val"));
+            }else if(isWordElement("default")){
+                checkedByDefault = isOn(reader.getAttributeValue(WORD_NAMESPACE, "val"));
+            }
+            skipElement();
+        }
+        return checked != null ? checked : checkedByDefault;
+    }
+
+    private void readDescendantTexts(List<String> texts) throws XMLStreamException {
+        int depth = 1;
+        while(depth > 0){
+            int event = reader.next();
+            if(event == XMLStreamConstants.START_ELEMENT){
+                if(isWordElement("t")){
+                    String text = reader.getElementText();
+                    if(!text.isEmpty()){
+                        texts.add(text);
+                    }
+                }else{
+                    depth++;
+                }
+            }else if(event == XMLStreamConstants.END_ELEMENT){
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * Reads the rows of the table, separating the cells by tabs.
+     */
+    private String readTable() throws XMLStreamException {
+        StringBuilder text = new StringBuilder();
+        while(nextChild()){
+            if(!isWordElement("tr")){
+                skipElement();
+                continue;
+            }
+
+            boolean firstCell = true;
+            while(nextChild()){
+                String cellText;
+                if(isWordElement("tc")){
+                    cellText = readCell();
+                }else if(isWordElement("sdt")){
+                    cellText = readCellContentControl();
+                }else{
+                    skipElement();
+                    continue;
+                }
+                if(!firstCell){
+                    text.append('\t');
+                }
+                text.append(cellText);
+                firstCell = false;
+            }
+            text.append('\n');
+        }
+        return text.toString();
+    }
+
+    /**
+     * Reads the cell like XWPFTableCell.getTextRecursively(). The separator behind an element depends on the following element,
+     * so it is added at the start of the next one.
+     */
+    private String readCell() throws XMLStreamException {
+        StringBuilder text = new StringBuilder();
+        String separator = "";
+        boolean paragraphFound = false;
+
+        while(nextChild()){
+            String elementText;
+            String nextSeparator = "\t";
+            if(isWordElement("p")){
+                elementText = readParagraph(true);
+                paragraphFound = true;
+            }else if(isWordElement("sdt")){
+                elementText = readBlockContentControl();
+            }else if(isWordElement("tbl")){
+                elementText = readNestedTable();
+                nextSeparator = "\n";
+            }else{
+                skipElement();
+                continue;
+            }
+
+            text.append(separator).append(elementText);
+            separator = nextSeparator;
+        }
+
+        // POI adds an empty paragraph to a cell without one
+        if(!paragraphFound){
+            text.append(separator);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Reads a table inside a cell, its cells aren't separated.
+     */
+    private String readNestedTable() throws XMLStreamException {
+        StringBuilder text = new StringBuilder();
+        while(nextChild()){
+            if(!isWordElement("tr")){
+                skipElement();
+                continue;
+            }
+            while(nextChild()){
+                if(isWordElement("tc")){
+                    text.append(readCell());
+                }else{
+                    skipElement();
+                }
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * Reads a content control around paragraphs or tables. Its content is taken as text and not as a text field,
+     * because such controls also group whole parts of a document.
+     */
+    private String readBlockContentControl() throws XMLStreamException {
+        String text = "";
+        ContentControlProperties properties = new ContentControlProperties();
+        while(nextChild()){
+            if(isWordElement("sdtPr")){
+                properties = readContentControlProperties();
+            }else if(isWordElement("sdtContent") && properties.checked == null && !properties.showingPlaceholder){
+                text = readBlockContent();
+            }else{
+                skipElement();
+            }
+        }
+        if(properties.checked != null){
+            return String.valueOf(properties.checked ? CHECKED_BOX : UNCHECKED_BOX);
+        }
+        return text;
+    }
+
+    /**
+     * Reads the content of a content control around paragraphs or tables, like XWPFSDTContent.getText().
+     */
+    private String readBlockContent() throws XMLStreamException {
+        StringBuilder text = new StringBuilder();
+        boolean newLinePending = false;
+
+        while(nextChild()){
+            String elementText;
+            if(isWordElement("p")){
+                elementText = readParagraph(false);
+            }else if(isWordElement("tbl")){
+                elementText = readTable();
+            }else if(isWordElement("sdt")){
+                elementText = readBlockContentControl();
+            }else{
+                skipElement();
+                continue;
+            }
+
+            if(newLinePending){
+                text.append('\n');
+            }
+            text.append(elementText);
+            newLinePending = true;
+        }
+        return text.toString();
+    }
+
+    /**
+     * Reads a content control inside a paragraph as checkbox or otherwise as text field, the placeholder of an empty field is left out.
+     */
+    private String readInlineContentControl() throws XMLStreamException {
+        StringBuilder text = new StringBuilder();
+        ContentControlProperties properties = new ContentControlProperties();
+        while(nextChild()){
+            if(isWordElement("sdtPr")){
+                properties = readContentControlProperties();
+            }else if(isWordElement("sdtContent") && properties.checked == null && !properties.showingPlaceholder){
+                while(nextChild()){
+                    if(isWordElement("r")){
+                        text.append(readRun());
+                    }else{
+                        skipElement();
+                    }
+                }
+            }else{
+                skipElement();
+            }
+        }
+        if(properties.checked != null){
+            return String.valueOf(properties.checked ? CHECKED_BOX : UNCHECKED_BOX);
+        }
+        return TEXT_FIELD_START + text.toString() + TEXT_FIELD_END;
+    }
+
+    private ContentControlProperties readContentControlProperties() throws XMLStreamException {
+        ContentControlProperties properties = new ContentControlProperties();
+        while(nextChild()){
+            if(isWordElement("showingPlcHdr")){
+                properties.showingPlaceholder = isOn(reader.getAttributeValue(WORD_NAMESPACE, "val"));
+                skipElement();
+            }else if(WORD_2010_NAMESPACE.equals(reader.getNamespaceURI()) && reader.getLocalName().equals("checkbox")){
+                properties.checked = false;
+                while(nextChild()){
+                    if(WORD_2010_NAMESPACE.equals(reader.getNamespaceURI()) && reader.getLocalName().equals("checked")){
+                        properties.checked = isOn(reader.getAttributeValue(WORD_2010_NAMESPACE, "val"));
+                    }
+                    skipElement();
+                }
+            }else{
+                skipElement();
+            }
+        }
+        return properties;
+    }
+
+    /**
+     * Reads the content of a content control around table cells like XWPFSDTContentCell, which takes all texts of the content.
+     */
+    private String readCellContentControl() throws XMLStreamException {
+        StringBuilder text = new StringBuilder();
+        while(nextChild()){
+            if(!isWordElement("sdtContent")){
+                skipElement();
+                continue;
+            }
+
+            int cellCount = 0;
+            int elementCount = 0;
+            int depth = 1;
+            while(depth > 0){
+                int event = reader.next();
+                if(event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA || event == XMLStreamConstants.SPACE){
+                    text.append(reader.getText());
+                }else if(event == XMLStreamConstants.START_ELEMENT){
+                    String localName = reader.getLocalName();
+                    if(localName.equals("tr")){
+                        cellCount = 0;
+                        elementCount = 0;
+                    }else if(localName.equals("tc")){
+                        if(cellCount++ > 0){
+                            text.append('\t');
+                        }
+                        elementCount = 0;
+                    }else if(localName.equals("p") || localName.equals("tbl") || localName.equals("sdt")){
+                        if(elementCount++ > 0){
+                            text.append('\n');
+                        }
+                    }
+                    depth++;
+                }else if(event == XMLStreamConstants.END_ELEMENT){
+                    depth--;
+                }
+            }
+        }
+        return text.toString();
+    }
+
+    /**
+     * @param value value of an on/off attribute, null if the attribute is missing, which means on
+     */
+    private static boolean isOn(String value){
+        return value == null || value.equals("1") || value.equals("true") || value.equals("on");
+    }
+
+    private int getIdAttribute(){
+        return new BigInteger(reader.getAttributeValue(WORD_NAMESPACE, "id")).intValue();
+    }
+
+    /**
+     * Moves to the next child element of the current element.
+     * @return false, if the end of the current element is reached instead
+     */
+    private boolean nextChild() throws XMLStreamException {
+        while(reader.hasNext()){
+            int event = reader.next();
+            if(event == XMLStreamConstants.START_ELEMENT){
+                return true;
+            }
+            if(event == XMLStreamConstants.END_ELEMENT){
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Moves to the end of the current element.
+     */
+    private void skipElement() throws XMLStreamException {
+        int depth = 1;
+        while(depth > 0){
+            int event = reader.next();
+            if(event == XMLStreamConstants.START_ELEMENT){
+                depth++;
+            }else if(event == XMLStreamConstants.END_ELEMENT){
+                depth--;
+            }
+        }
+    }
+
+    private boolean isWordElement(String localName){
+        return WORD_NAMESPACE.equals(reader.getNamespaceURI()) && localName.equals(reader.getLocalName());
+    }
+
+    private static class ContentControlProperties {
+        // state of a checkbox, null if the content control isn't a checkbox
+        private Boolean checked;
+        private boolean showingPlaceholder;
+    }
+}
@@ -0,0 +1,286 @@
+package de.thb.kritis_elfe.service.helper.word;
+
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes a word document (docx) directly into the given output stream, without holding the document in memory.
+ * Paragraphs and tables are written in the order of the method calls, a finished element can't be changed anymore.
+ * The output stream is not closed by this writer.
+ */
+public class WordDocumentWriter {
+    private static final String WORD_NAMESPACE = "http://schemas.openxmlformats.org/wordprocessingml/2006/main";
+    private static final String XML_NAMESPACE = "http://www.w3.org/XML/1998/namespace";
+
+    private static final String CONTENT_TYPES = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>" +
+            "<Types xmlns=\"http://schemas.openxmlformats.org/package/2006/content-types\">" +
+            "<Default Extension=\"rels\" ContentType=\"application/vnd.openxmlformats-package.relationships+xml\"/>" +
+            "<Default Extension=\"xml\" ContentType=\"application/xml\"/>" +
+            "<Override PartName=\"/word/document.xml\" ContentType=\"application/vnd.openxmlformats-officedocument.wordprocessingml.document.main+xml\"/>" +
+            "</Types>";
+
+    private static final String RELATIONSHIPS = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"yes\"?>" +
+            "<Relationships xmlns=\"http://schemas.openxmlformats.org/package/2006/relationships\">" +
+            "<Relationship Id=\"rId1\" Type=\"http://schemas.openxmlformats.org/officeDocument/2006/relationships/officeDocument\" Target=\"word/document.xml\"/>" +
+            "</Relationships>";
+
+    private static final String[] TABLE_BORDERS = {"top", "left", "bottom", "right", "insideH", "insideV"};
+    // width of the text on the default page of word in twentieths of a point, the columns of a table share it initially
+    private static final int TEXT_WIDTH = 9360;
+
+    private final ZipOutputStream zipOutputStream;
+    private final XMLStreamWriter writer;
+
+    public WordDocumentWriter(OutputStream outputStream) throws IOException {
+        zipOutputStream = new ZipOutputStream(outputStream);
+
+        writeZipEntry("[Content_Types].xml", CONTENT_TYPES);
+        writeZipEntry("_rels/.rels", RELATIONSHIPS);
+
+        zipOutputStream.putNextEntry(new ZipEntry("word/document.xml"));
+        try {
+            writer = XMLOutputFactory.newInstance().createXMLStreamWriter(zipOutputStream, "UTF-8");
+            writer.writeStartDocument("UTF-8", "1.0");
+            writer.setPrefix("w", WORD_NAMESPACE);
+            writer.writeStartElement(WORD_NAMESPACE, "document");
+            writer.writeNamespace("w", WORD_NAMESPACE);
+            writer.writeStartElement(WORD_NAMESPACE, "body");
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Starts a new paragraph.
+     * @param alignment alignment of the paragraph like "left" or "center", null for the default alignment
+     * @throws IOException
+     */
+    public void startParagraph(String alignment) throws IOException {
+        try {
+            writer.writeStartElement(WORD_NAMESPACE, "p");
+            if(alignment != null){
+                writer.writeStartElement(WORD_NAMESPACE, "pPr");
+                writeValueElement("jc", alignment);
+                writer.writeEndElement();
+            }
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    public void endParagraph() throws IOException {
+        writeEndElement();
+    }
+
+    /**
+     * Writes a paragraph containing only the given runs.
+     * @param alignment alignment of the paragraph, null for the default alignment
+     * @param runs
+     * @throws IOException
+     */
+    public void writeParagraph(String alignment, WordRun... runs) throws IOException {
+        startParagraph(alignment);
+        for(WordRun run: runs){
+            writeRun(run);
+        }
+        endParagraph();
+    }
+
+    /**
+     * Writes the given run into the current paragraph.
+     * @param run
+     * @throws IOException
+     */
+    public void writeRun(WordRun run) throws IOException {
+        try {
+            writer.writeStartElement(WORD_NAMESPACE, "r");
+
+            if(run.getFontFamily() != null || run.isBold() || run.getFontSize() > 0 || run.isHighlighted() || run.isUnderlined()){
+                writer.writeStartElement(WORD_NAMESPACE, "rPr");
+                if(run.getFontFamily() != null){
+                    writer.writeEmptyElement(WORD_NAMESPACE, "rFonts");
+                    writer.writeAttribute(WORD_NAMESPACE, "ascii", run.getFontFamily());
+                    writer.writeAttribute(WORD_NAMESPACE, "hAnsi", run.getFontFamily());
+                    writer.writeAttribute(WORD_NAMESPACE, "cs", run.getFontFamily());
+                    writer.writeAttribute(WORD_NAMESPACE, "eastAsia", run.getFontFamily());
+                }
+                if(run.isBold()){
+                    writeValueElement("b", "true");
+                }
+                if(run.getFontSize() > 0){
+                    // the size is given in half points
+                    writeValueElement("sz", String.valueOf(run.getFontSize() * 2));
+                }
+                if(run.isHighlighted()){
+                    writeValueElement("highlight", "yellow");
+                }
+                if(run.isUnderlined()){
+                    writeValueElement("u", "single");
+                }
+                writer.writeEndElement();
+            }
+
+            if(run.getText() != null){
+                String[] lines = run.getText().split("\n");
+                for(int i = 0; i < lines.length; i++){
+                    writer.writeStartElement(WORD_NAMESPACE, "t");
+                    writer.writeAttribute("xml", XML_NAMESPACE, "space", "preserve");
+                    writer.writeCharacters(lines[i]);
+                    writer.writeEndElement();
+                    if(i != lines.length - 1){
+                        writer.writeEmptyElement(WORD_NAMESPACE, "br");
+                    }
+                }
+            }
+
+            for(int i = 0; i < run.getBreaks(); i++){
+                writer.writeEmptyElement(WORD_NAMESPACE, "br");
+            }
+
+            writer.writeEndElement();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Starts a new table with single borders and automatic width.
+     * @param columnCount number of the cells of every row, needed for the grid of the table
+     * @throws IOException
+     */
+    public void startTable(int columnCount) throws IOException {
+        try {
+            writer.writeStartElement(WORD_NAMESPACE, "tbl");
+            writer.writeStartElement(WORD_NAMESPACE, "tblPr");
+
+            writer.writeEmptyElement(WORD_NAMESPACE, "tblW");
+            writer.writeAttribute(WORD_NAMESPACE, "w", "0");
+            writer.writeAttribute(WORD_NAMESPACE, "type", "auto");
+
+            writer.writeStartElement(WORD_NAMESPACE, "tblBorders");
+            for(String border: TABLE_BORDERS){
+                writer.writeEmptyElement(WORD_NAMESPACE, border);
+                writer.writeAttribute(WORD_NAMESPACE, "val", "single");
+                writer.writeAttribute(WORD_NAMESPACE, "sz", "4");
+                writer.writeAttribute(WORD_NAMESPACE, "space", "0");
+                writer.writeAttribute(WORD_NAMESPACE, "color", "000000");
+            }
+            writer.writeEndElement();
+
+            writer.writeEndElement();
+
+            // the grid is required by the schema, word adjusts the widths of the columns to the content
+            writer.writeStartElement(WORD_NAMESPACE, "tblGrid");
+            for(int i = 0; i < columnCount; i++){
+                writer.writeEmptyElement(WORD_NAMESPACE, "gridCol");
+                writer.writeAttribute(WORD_NAMESPACE, "w", String.valueOf(TEXT_WIDTH / columnCount));
+            }
+            writer.writeEndElement();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    public void endTable() throws IOException {
+        writeEndElement();
+    }
+
+    public void startTableRow() throws IOException {
+        try {
+            writer.writeStartElement(WORD_NAMESPACE, "tr");
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    public void endTableRow() throws IOException {
+        writeEndElement();
+    }
+
+    /**
+     * Writes a table cell with a single paragraph into the current row.
+     * @param fillColor background color as hex string like "FFFFFF", null for no color
+     * @param centered centers the text horizontally and vertically
+     * @param run content of the cell, may be null for an empty cell
+     * @throws IOException
+     */
+    public void writeTableCell(String fillColor, boolean centered, WordRun run) throws IOException {
+        try {
+            writer.writeStartElement(WORD_NAMESPACE, "tc");
+            writer.writeStartElement(WORD_NAMESPACE, "tcPr");
+            writer.writeEmptyElement(WORD_NAMESPACE, "tcW");
+            writer.writeAttribute(WORD_NAMESPACE, "w", "0");
+            writer.writeAttribute(WORD_NAMESPACE, "type", "auto");
+            if(fillColor != null){
+                writer.writeEmptyElement(WORD_NAMESPACE, "shd");
+                writer.writeAttribute(WORD_NAMESPACE, "val", "clear");
+                writer.writeAttribute(WORD_NAMESPACE, "color", "auto");
+                writer.writeAttribute(WORD_NAMESPACE, "fill", fillColor);
+            }
+            if(centered){
+                writeValueElement("vAlign", "center");
+            }
+            writer.writeEndElement();
+
+            writer.writeStartElement(WORD_NAMESPACE, "p");
+            if(centered){
+                writer.writeStartElement(WORD_NAMESPACE, "pPr");
+                writer.writeEmptyElement(WORD_NAMESPACE, "spacing");
+                writer.writeAttribute(WORD_NAMESPACE, "before", "1");
+                writer.writeAttribute(WORD_NAMESPACE, "after", "1");
+                writeValueElement("jc", "center");
+                writer.writeEndElement();
+            }
+            if(run != null){
+                writeRun(run);
+            }
+            writer.writeEndElement();
+
+            writer.writeEndElement();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Finishes the document. The output stream stays open.
+     * @throws IOException
+     */
+    public void finish() throws IOException {
+        try {
+            writer.writeEndElement();
+            writer.writeEndElement();
+            writer.writeEndDocument();
+            writer.flush();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+        zipOutputStream.closeEntry();
+        zipOutputStream.finish();
+    }
+
+    private void writeValueElement(String name, String value) throws XMLStreamException {
+        writer.writeEmptyElement(WORD_NAMESPACE, name);
+        writer.writeAttribute(WORD_NAMESPACE, "val", value);
+    }
+
+    private void writeEndElement() throws IOException {
+        try {
+            writer.writeEndElement();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private void writeZipEntry(String name, String content) throws IOException {
+        zipOutputStream.putNextEntry(new ZipEntry(name));
+        zipOutputStream.write(content.getBytes(StandardCharsets.UTF_8));
+        zipOutputStream.closeEntry();
+    }
+}
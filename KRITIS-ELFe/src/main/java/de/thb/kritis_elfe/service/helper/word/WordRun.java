@@ -0,0 +1,22 @@
+package de.thb.kritis_elfe.service.helper.word;
+
+import lombok.Builder;
+import lombok.Getter;
+
+/**
+ * Text with its formatting, which is written as one run by the WordDocumentWriter.
+ * Line breaks inside the text are written as breaks.
+ */
+@Builder
+@Getter
+public class WordRun {
+    private String text;
+    private boolean bold;
+    // in points, 0 for the default size
+    private int fontSize;
+    private String fontFamily;
+    private boolean underlined;
+    private boolean highlighted;
+    // number of breaks after the text
+    private int breaks;
+}
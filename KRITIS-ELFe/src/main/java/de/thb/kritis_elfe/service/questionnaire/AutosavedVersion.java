@@ -0,0 +1,18 @@
+package de.thb.kritis_elfe.service.questionnaire;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Version of a questionnaire before and after writing autosaved changes, reported to the situation page.
+ * FilledScenarios changed by another user since the page was loaded aren't written, the page shows them as conflicts.
+ */
+@Getter
+@AllArgsConstructor
+public class AutosavedVersion {
+    private final long previousVersion;
+    private final long version;
+    private final List<Long> conflictingFilledScenarioIds;
+}
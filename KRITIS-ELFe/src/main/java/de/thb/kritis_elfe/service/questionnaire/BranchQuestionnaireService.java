@@ -1,6 +1,7 @@
 package de.thb.kritis_elfe.service.questionnaire;
 
 import de.thb.kritis_elfe.entity.questionnaire.BranchQuestionnaire;
+import de.thb.kritis_elfe.entity.questionnaire.Questionnaire;
 import de.thb.kritis_elfe.repository.questionnaire.BranchQuestionnaireRepository;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -22,5 +23,39 @@ public class BranchQuestionnaireService {
         branchQuestionnaireRepository.saveAll(branchQuestionnaires);
     }
 
+    /**
+     * Copies all BranchQuestionnaires of the questionnaire into the new questionnaire with a single statement.
+     * @param questionnaire
+     * @param newQuestionnaire
+     */
+    public void copyBranchQuestionnaires(Questionnaire questionnaire, Questionnaire newQuestionnaire){
+        branchQuestionnaireRepository.copyBranchQuestionnaires(questionnaire, newQuestionnaire);
+    }
+
+    /**
+     * Moves all BranchQuestionnaires of the questionnaire with their FilledScenarios to the new questionnaire.
+     * @param questionnaire
+     * @param newQuestionnaire
+     */
+    public void moveBranchQuestionnaires(Questionnaire questionnaire, Questionnaire newQuestionnaire){
+        branchQuestionnaireRepository.moveBranchQuestionnaires(questionnaire, newQuestionnaire);
+    }
+
+    /**
+     * Deletes all BranchQuestionnaires of the questionnaire, their FilledScenarios have to be deleted before.
+     * @param questionnaire
+     */
+    public void deleteBranchQuestionnaires(Questionnaire questionnaire){
+        branchQuestionnaireRepository.deleteByQuestionnaire(questionnaire);
+    }
+
+    /**
+     * Loads the FilledScenarios with their scenarios of all BranchQuestionnaires of the questionnaire with a single query.
+     * @param questionnaire
+     */
+    public void fetchFilledScenarios(Questionnaire questionnaire){
+        branchQuestionnaireRepository.findAllWithFilledScenariosByQuestionnaire(questionnaire);
+    }
+
     public void deleteBranchQuestionnaire(BranchQuestionnaire branchQuestionnaire){branchQuestionnaireRepository.delete(branchQuestionnaire);}
 }
\ No newline at end of file
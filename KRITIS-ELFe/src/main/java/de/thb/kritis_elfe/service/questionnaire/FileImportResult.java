@@ -0,0 +1,28 @@
+package de.thb.kritis_elfe.service.questionnaire;
+
+import de.thb.kritis_elfe.controller.form.FilledScenarioChange;
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Values and errors read from a single uploaded file.
+ * The errors are the names of the model attributes listing the files with this error.
+ */
+@Getter
+public class FileImportResult {
+    private final String fileName;
+    private final List<FilledScenarioChange> filledScenarioChanges = new ArrayList<>();
+    private final Set<String> errors = new LinkedHashSet<>();
+
+    public FileImportResult(String fileName) {
+        this.fileName = fileName;
+    }
+
+    public void addError(String error){
+        errors.add(error);
+    }
+}
@@ -1,10 +1,13 @@
 package de.thb.kritis_elfe.service.questionnaire;
 
+import de.thb.kritis_elfe.entity.Report;
 import de.thb.kritis_elfe.entity.questionnaire.Questionnaire;
 import de.thb.kritis_elfe.entity.Scenario;
 import de.thb.kritis_elfe.entity.questionnaire.FilledScenario;
 import de.thb.kritis_elfe.enums.ScenarioType;
 import de.thb.kritis_elfe.repository.questionnaire.FilledScenarioRepository;
+import de.thb.kritis_elfe.repository.questionnaire.ReportFilledScenario;
+import de.thb.kritis_elfe.repository.questionnaire.SectorMaxValue;
 import de.thb.kritis_elfe.service.ScenarioService;
 import lombok.AllArgsConstructor;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -21,11 +24,53 @@ public class FilledScenarioService {
     public void saveAllFilledScenarios(List<FilledScenario> userScenarios){
         filledScenarioRepository.saveAll(userScenarios);}
 
-    public void updateFilledScenarioValueAndCommentById(short value, String comment, long id){
-        filledScenarioRepository.updateFilledScenarioValueAndCommentDateFromId(value, comment ,id);
-    }
     public FilledScenario saveFilledScenario(FilledScenario userScenario){
         return filledScenarioRepository.save(userScenario);
     }
 
+    /**
+     * Returns the FilledScenarios with the given ids, which belong to the questionnaire, if it is not part of a report.
+     * @param ids
+     * @param questionnaireId
+     * @return
+     */
+    public List<FilledScenario> getFilledScenariosByIdsAndQuestionnaireId(Collection<Long> ids, long questionnaireId){
+        return filledScenarioRepository.findAllByIdInAndQuestionnaireId(ids, questionnaireId);
+    }
+
+    /**
+     * Copies all FilledScenarios of the questionnaire into the BranchQuestionnaires of the new questionnaire
+     * with the same branch by a single statement.
+     * @param questionnaire
+     * @param newQuestionnaire
+     */
+    public void copyFilledScenarios(Questionnaire questionnaire, Questionnaire newQuestionnaire){
+        filledScenarioRepository.copyFilledScenarios(questionnaire.getId(), newQuestionnaire.getId());
+    }
+
+    /**
+     * Deletes the FilledScenarios of all BranchQuestionnaires of the questionnaire.
+     * @param questionnaire
+     */
+    public void deleteFilledScenarios(Questionnaire questionnaire){
+        filledScenarioRepository.deleteByQuestionnaire(questionnaire);
+    }
+
+    /**
+     * Returns the maximum value of all selection scenarios per sector and federal state for the given report.
+     * @param report
+     * @return
+     */
+    public List<SectorMaxValue> getMaxValuesBySectorAndFederalStateForReport(Report report){
+        return filledScenarioRepository.findMaxValuesBySectorAndFederalStateForReport(report, ScenarioType.AUSWAHL);
+    }
+
+    /**
+     * Returns all FilledScenarios of the given report together with the report questionnaire they belong to.
+     * @param report
+     * @return
+     */
+    public List<ReportFilledScenario> getFilledScenariosWithQuestionnaireForReport(Report report){
+        return filledScenarioRepository.findAllWithQuestionnaireByReport(report);
+    }
 }
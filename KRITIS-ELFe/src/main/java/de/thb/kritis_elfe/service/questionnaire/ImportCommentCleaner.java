@@ -0,0 +1,49 @@
+package de.thb.kritis_elfe.service.questionnaire;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Removes the texts of the questionnaire template like hints, scales and page footers from the imported comments.
+ * The patterns are compiled once and applied in their order, because removing one text can join the parts of another.
+ */
+public class ImportCommentCleaner {
+    // texts of the known templates of the BBK
+    private static final List<String> TEMPLATE_TEXTS = List.of(
+            "\\s?keine\\s/\\s{1,2}gar\\s{1,2}nicht\\s{1,2}gering\\s{1,2}erheb(-\\s)?lic(\\s{0,3})h\\s{1,2}massiv\\sKonkretisierung\\s?",
+            "\\s{0,3}Lageprognose\\s/\\slängerfristige\\sPerspektive\\s\\(bitte\\sZeithorizont\\sder\\sAussage\\sim\\sFreitextfeld\\sspezifizieren\\)\\s{0,3}",
+            "\\s?!\\sVSA-Einstufung\\sauswählen\\s!\\s{0,3}",
+            "\\s?Gemeinsames\\s{1,2}Kompetenzzentrum\\s{1,2}Bevölkerungsschutz\\s+Seite\\s\\d+\\svon\\s\\d+\\sStand:\\sGemeinsames\\sLagebild\\sBevölkerungsschutz\\s–\\sMeldevorlage\\s[A-Za-z] -\\sKRITIS\\s?",
+            "\\s?keine\\s/\\s{1,2}gar\\snicht\\serheblic\\s?h\\s{1,2}kritisch\\s?/\\s{1,2}umfasse\\s?nd(\\s{1,2}Konkretisierung\\s{1,2}gering)?\\s?",
+            "\\s?Bitte\\snäher\\sausführen\\s\\(z.\\sB.\\sorganisatorisch,\\spersonell,\\slogistisch,\\smateriell,\\sgesetzgeberisch\\)\\s?",
+            "\\s?Bitte\\simmer\\sausfüllen,\\swenn\\snicht\\s„grün“\\sausgewählt(\\swurde\\.)?\\s?",
+            "\\s?((Personenbezogene Einschränkungen bzw. Personalausfälle)" +
+                    "|(Technikeinschränkungen / technische Ausstattung)" +
+                    "|(Technikeinschränkungen / technische Ausstattung)" +
+                    "|(Gefährdung / Beeinträchtigung IT-Systeme \\(IT-Security\\))" +
+                    "|(Einschränkungen bei Betriebsmitteln)|(Organisatorische Einwirkungen / Einschränkungen)" +
+                    "|(\\(z. B. organisatorisch, personell, logistisch, materiell, gesetzgeberisch\\))" +
+                    "|(Sonstiges und äußere Einflüsse))\\s-\\s?");
+
+    private final List<Pattern> patterns = new ArrayList<>();
+
+    /**
+     * @param additionalTemplateTexts regular expressions of the texts of newer templates, removed after the known ones
+     */
+    public ImportCommentCleaner(List<String> additionalTemplateTexts) {
+        for(String templateText: TEMPLATE_TEXTS){
+            patterns.add(Pattern.compile(templateText));
+        }
+        for(String templateText: additionalTemplateTexts){
+            patterns.add(Pattern.compile(templateText));
+        }
+    }
+
+    public String clean(String comment){
+        for(Pattern pattern: patterns){
+            comment = pattern.matcher(comment).replaceAll("");
+        }
+        return comment;
+    }
+}
@@ -0,0 +1,86 @@
+package de.thb.kritis_elfe.service.questionnaire;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.InputStreamSource;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A file uploaded to fill a questionnaire.
+ */
+@Getter
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+@Slf4j
+public class ImportFile {
+    private final String fileName;
+    private final String contentType;
+    private final InputStreamSource content;
+    // temporary file holding the content after the request, null if the content is read from elsewhere
+    @Getter(AccessLevel.NONE)
+    private final Path spoolFile;
+
+    public ImportFile(String fileName, String contentType, InputStreamSource content){
+        this(fileName, contentType, content, null);
+    }
+
+    /**
+     * Uses the uploaded files directly, they can only be read during the request.
+     * @param files
+     * @return
+     */
+    public static List<ImportFile> fromMultipartFiles(MultipartFile[] files){
+        List<ImportFile> importFiles = new ArrayList<>();
+        for(MultipartFile file: files){
+            importFiles.add(new ImportFile(file.getOriginalFilename(), file.getContentType(), file));
+        }
+        return importFiles;
+    }
+
+    /**
+     * Writes the uploaded files into temporary files, so they can be read after the request without holding them in memory.
+     * The temporary files have to be deleted with deleteSpooledFiles.
+     * @param files
+     * @return
+     * @throws IOException
+     */
+    public static List<ImportFile> spoolMultipartFiles(MultipartFile[] files) throws IOException {
+        List<ImportFile> importFiles = new ArrayList<>();
+        try {
+            for(MultipartFile file: files){
+                Path spoolFile = Files.createTempFile("kritis-elfe-import-", null);
+                importFiles.add(new ImportFile(file.getOriginalFilename(), file.getContentType(), new FileSystemResource(spoolFile), spoolFile));
+                file.transferTo(spoolFile);
+            }
+        } catch (IOException | RuntimeException e) {
+            deleteSpooledFiles(importFiles);
+            throw e;
+        }
+        return importFiles;
+    }
+
+    /**
+     * Deletes the temporary files of the files written by spoolMultipartFiles.
+     * @param importFiles
+     */
+    public static void deleteSpooledFiles(List<ImportFile> importFiles){
+        for(ImportFile importFile: importFiles){
+            if(importFile.spoolFile == null){
+                continue;
+            }
+            try {
+                Files.deleteIfExists(importFile.spoolFile);
+            } catch (IOException e) {
+                log.warn("The temporary file {} of the uploaded file {} could not be deleted.", importFile.spoolFile, importFile.fileName, e);
+            }
+        }
+    }
+}
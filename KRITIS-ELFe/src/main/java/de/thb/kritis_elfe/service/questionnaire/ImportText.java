@@ -0,0 +1,116 @@
+package de.thb.kritis_elfe.service.questionnaire;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits the text of an uploaded questionnaire into the name of the branch and the blocks of the numbered scenarios.
+ * The text is read once from the front, every block starts with its header like "\n3. " and ends before the next header.
+ */
+@Getter
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public class ImportText {
+    public static final String START = "Fachlage";
+    private static final String ALTERNATIVE_START = "Sektor ";
+    private static final String BRANCH = "Branche";
+
+    private final List<String> scenarioBlocks;
+    // text behind "Branche" until the end of the line, null if there is no branch
+    private final String branchName;
+
+    /**
+     * Reads the text of a questionnaire starting at "Fachlage" or otherwise "Sektor ".
+     * @param text whole text of the file
+     * @return the read text, null if the text doesn't contain the start
+     */
+    public static ImportText parse(String text){
+        int start = text.indexOf(START);
+        if(start < 0){
+            start = text.indexOf(ALTERNATIVE_START);
+        }
+        if(start < 0){
+            return null;
+        }
+
+        StringBuilder content = new StringBuilder(text.length() - start);
+        for(int i = start; i < text.length(); i++){
+            char character = text.charAt(i);
+            if(character != '\r'){
+                content.append(character);
+            }
+        }
+
+        return new ImportText(readScenarioBlocks(content), readBranchName(content));
+    }
+
+    private static List<String> readScenarioBlocks(CharSequence content){
+        List<String> scenarioBlocks = new ArrayList<>();
+        int blockStart = -1;
+        int blockContentStart = -1;
+
+        int i = 0;
+        while(i < content.length()){
+            int headerEnd = getHeaderEnd(content, i);
+            if(headerEnd < 0){
+                i++;
+                continue;
+            }
+            if(blockStart >= 0){
+                scenarioBlocks.add(content.subSequence(blockStart, i).toString());
+            }
+            blockStart = i;
+            blockContentStart = headerEnd;
+            i = headerEnd;
+        }
+
+        if(blockStart >= 0){
+            // like "$" of a regular expression the last block ends before a line terminator at the end of the text
+            int blockEnd = content.length();
+            if(blockEnd > blockContentStart && isLineTerminator(content.charAt(blockEnd - 1))){
+                blockEnd--;
+            }
+            scenarioBlocks.add(content.subSequence(blockStart, blockEnd).toString());
+        }
+        return scenarioBlocks;
+    }
+
+    /**
+     * Returns the end of the header like "\n3. " at the given position, -1 if there is no header.
+     */
+    private static int getHeaderEnd(CharSequence content, int position){
+        if(content.charAt(position) != '\n'){
+            return -1;
+        }
+
+        int i = position + 1;
+        while(i < content.length() && content.charAt(i) >= '0' && content.charAt(i) <= '9'){
+            i++;
+        }
+        if(i == position + 1 || i + 1 >= content.length() || content.charAt(i) != '.' || content.charAt(i + 1) != ' '){
+            return -1;
+        }
+        return i + 2;
+    }
+
+    private static boolean isLineTerminator(char character){
+        return character == '\n' || character == '\u0085' || character == '\u2028' || character == '\u2029';
+    }
+
+    private static String readBranchName(StringBuilder content){
+        int branchStart = content.indexOf(BRANCH);
+        if(branchStart < 0){
+            return null;
+        }
+        branchStart += BRANCH.length();
+
+        int branchEnd = content.indexOf("\n", branchStart);
+        if(branchEnd < 0){
+            branchEnd = content.length();
+        }
+        return content.substring(branchStart, branchEnd);
+    }
+}
@@ -0,0 +1,106 @@
+package de.thb.kritis_elfe.service.questionnaire;
+
+import de.thb.kritis_elfe.controller.form.FilledScenarioChange;
+import de.thb.kritis_elfe.entity.User;
+import de.thb.kritis_elfe.service.Exceptions.AccessDeniedException;
+import de.thb.kritis_elfe.service.Exceptions.EntityDoesNotExistException;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Collects the autosaved changes of single FilledScenarios per questionnaire and writes them delayed.
+ * Multiple changes of the same FilledScenario are combined, so only the last one is written
+ * and it is compared with the saved state the first one was based on.
+ * The callers are notified with the new version of the questionnaire, once their changes are written.
+ */
+@Service
+@AllArgsConstructor
+@Slf4j
+public class QuestionnaireAutosaveService {
+    private final QuestionnaireService questionnaireService;
+
+    // pending changes per questionnaire id
+    private final ConcurrentHashMap<Long, PendingChanges> pendingChanges = new ConcurrentHashMap<>();
+
+    /**
+     * Adds the change of a single FilledScenario, it is written with the next flush.
+     * @param questionnaireId
+     * @param name name of the federal state or ressort of the questionnaire
+     * @param user
+     * @param filledScenarioChange
+     * @return completed with the version of the questionnaire after the flush or exceptionally, if the changes couldn't be written
+     * @throws EntityDoesNotExistException
+     * @throws AccessDeniedException
+     */
+    public CompletableFuture<AutosavedVersion> addChange(long questionnaireId, String name, User user, FilledScenarioChange filledScenarioChange)
+            throws EntityDoesNotExistException, AccessDeniedException {
+        questionnaireService.checkAccessToQuestionnaire(questionnaireId, name, user);
+
+        return pendingChanges.compute(questionnaireId, (id, pending) -> {
+            if(pending == null){
+                pending = new PendingChanges();
+            }
+            LinkedHashMap<Long, FilledScenarioChange> changes = pending.changes;
+            FilledScenarioChange pendingChange = changes.get(filledScenarioChange.getId());
+            if(pendingChange != null && filledScenarioChange.getValue() == null){
+                // keep the pending value, if only the comment was changed
+                changes.put(filledScenarioChange.getId(), new FilledScenarioChange(filledScenarioChange.getId(),
+                        pendingChange.getValue(), filledScenarioChange.getComment(), pendingChange.getSavedValue(), pendingChange.getSavedComment()));
+            }else if(pendingChange != null){
+                changes.put(filledScenarioChange.getId(), new FilledScenarioChange(filledScenarioChange.getId(),
+                        filledScenarioChange.getValue(), filledScenarioChange.getComment(), pendingChange.getSavedValue(), pendingChange.getSavedComment()));
+            }else{
+                changes.put(filledScenarioChange.getId(), filledScenarioChange);
+            }
+            return pending;
+        }).saved;
+    }
+
+    /**
+     * Writes the pending changes of the questionnaire.
+     * Has to be called before the questionnaire is saved otherwise, so older changes can't overwrite newer ones.
+     * @param questionnaireId
+     */
+    public synchronized void flush(long questionnaireId){
+        PendingChanges pending = pendingChanges.remove(questionnaireId);
+        if(pending == null){
+            return;
+        }
+
+        try {
+            pending.saved.complete(questionnaireService.saveAutosavedFilledScenarioChanges(questionnaireId, pending.changes));
+        } catch (EntityDoesNotExistException e) {
+            // the questionnaire became part of a report, the pages of the callers are outdated
+            pending.saved.completeExceptionally(e);
+        } catch (RuntimeException e) {
+            pending.saved.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /**
+     * Writes the pending changes of all questionnaires.
+     */
+    @Scheduled(fixedDelay = 5000)
+    public synchronized void flushAll(){
+        for(Long questionnaireId: pendingChanges.keySet()){
+            try {
+                flush(questionnaireId);
+            } catch (RuntimeException e) {
+                log.warn("The autosaved changes of the questionnaire {} could not be saved.", questionnaireId, e);
+            }
+        }
+    }
+
+    private static class PendingChanges {
+        // changes by the id of the FilledScenario
+        private final LinkedHashMap<Long, FilledScenarioChange> changes = new LinkedHashMap<>();
+        private final CompletableFuture<AutosavedVersion> saved = new CompletableFuture<>();
+    }
+}
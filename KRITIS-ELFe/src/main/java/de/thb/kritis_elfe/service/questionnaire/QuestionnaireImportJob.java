@@ -0,0 +1,99 @@
+package de.thb.kritis_elfe.service.questionnaire;
+
+import de.thb.kritis_elfe.entity.User;
+import de.thb.kritis_elfe.enums.ImportJobStatus;
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Import of uploaded files into a questionnaire, which runs after the upload request.
+ * The getters are the status reported to the situation page.
+ */
+@Getter
+public class QuestionnaireImportJob {
+    private final String id;
+    private final int fileCount;
+
+    @Getter(AccessLevel.NONE)
+    private final String username;
+    @Getter(AccessLevel.NONE)
+    private final String name;
+    @Getter(AccessLevel.NONE)
+    private final AtomicInteger importedFileCount = new AtomicInteger();
+    @Getter(AccessLevel.NONE)
+    private volatile List<ImportFile> files;
+
+    private volatile ImportJobStatus status = ImportJobStatus.WAITING;
+    // names of the files per error, named like the model attributes of the situation page
+    private volatile Map<String, List<String>> errorFileNames = new HashMap<>();
+    @Getter(AccessLevel.NONE)
+    private volatile long finishedAt;
+
+    public QuestionnaireImportJob(String id, String username, String name, List<ImportFile> files) {
+        this.id = id;
+        this.username = username;
+        this.name = name;
+        this.files = files;
+        this.fileCount = files.size();
+    }
+
+    public int getImportedFileCount(){
+        return importedFileCount.get();
+    }
+
+    /**
+     * Checks if the job was started by the given user for the federal state or ressort with the given name.
+     * @param user
+     * @param name
+     * @return
+     */
+    public boolean belongsTo(User user, String name){
+        return username.equals(user.getUsername()) && this.name.equals(name);
+    }
+
+    public boolean isEnded(){
+        return status == ImportJobStatus.FINISHED || status == ImportJobStatus.FAILED;
+    }
+
+    public boolean isFinishedBefore(long time){
+        return isEnded() && finishedAt < time;
+    }
+
+    String getName(){
+        return name;
+    }
+
+    List<ImportFile> getFiles(){
+        return files;
+    }
+
+    void start(){
+        status = ImportJobStatus.RUNNING;
+    }
+
+    void fileImported(){
+        importedFileCount.incrementAndGet();
+    }
+
+    void finish(Map<String, List<String>> errorFileNames){
+        this.errorFileNames = errorFileNames;
+        end(ImportJobStatus.FINISHED);
+    }
+
+    void fail(){
+        end(ImportJobStatus.FAILED);
+    }
+
+    private void end(ImportJobStatus status){
+        // the content of the files isn't needed anymore
+        ImportFile.deleteSpooledFiles(files);
+        files = null;
+        finishedAt = System.currentTimeMillis();
+        this.status = status;
+    }
+}
@@ -0,0 +1,189 @@
+package de.thb.kritis_elfe.service.questionnaire;
+
+import de.thb.kritis_elfe.entity.User;
+import de.thb.kritis_elfe.service.Exceptions.AccessDeniedException;
+import de.thb.kritis_elfe.service.Exceptions.EntityDoesNotExistException;
+import de.thb.kritis_elfe.service.Exceptions.ImportJobRejectedException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.ui.Model;
+import org.springframework.web.multipart.MultipartFile;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Imports uploaded files into questionnaires, directly or by jobs running after the upload request, so large uploads don't block the request.
+ * The files are read outside of a transaction, only loading the questionnaire and saving the values hold a database connection.
+ * The jobs are only held in memory and removed some time after they ended.
+ * The waiting jobs hold their files as temporary files, which are deleted when the job ends,
+ * and only a few jobs and one per user and questionnaire can wait.
+ */
+@Service
+@Slf4j
+public class QuestionnaireImportJobService {
+    // the files of a single job are already read in parallel
+    private static final int MAX_RUNNING_JOBS = 2;
+    private static final int MAX_WAITING_JOBS = 8;
+    private static final long JOB_EXPIRATION_MILLIS = 30 * 60 * 1000;
+
+    private final QuestionnaireService questionnaireService;
+    private final QuestionnaireImportService questionnaireImportService;
+    private final QuestionnaireAutosaveService questionnaireAutosaveService;
+    private final ExecutorService executorService;
+
+    private final ConcurrentHashMap<String, QuestionnaireImportJob> jobs = new ConcurrentHashMap<>();
+
+    public QuestionnaireImportJobService(QuestionnaireService questionnaireService, QuestionnaireImportService questionnaireImportService,
+                                         QuestionnaireAutosaveService questionnaireAutosaveService) {
+        this.questionnaireService = questionnaireService;
+        this.questionnaireImportService = questionnaireImportService;
+        this.questionnaireAutosaveService = questionnaireAutosaveService;
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executorService = new ThreadPoolExecutor(MAX_RUNNING_JOBS, MAX_RUNNING_JOBS, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(MAX_WAITING_JOBS), runnable -> {
+            Thread thread = new Thread(runnable, "questionnaire-import-job-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown(){
+        executorService.shutdown();
+    }
+
+    /**
+     * Imports the uploaded files into the current questionnaire of the federal state or ressort during the request.
+     * @param files
+     * @param name name of the federal state or ressort
+     * @param user
+     * @param model gets the names of the files per error and if the import succeeded
+     * @throws AccessDeniedException
+     * @throws EntityDoesNotExistException if the questionnaire became part of a report while the files were read
+     */
+    public void importFiles(MultipartFile[] files, String name, User user, Model model) throws AccessDeniedException, EntityDoesNotExistException {
+        Map<String, List<String>> errorFileNames = new HashMap<>();
+        importFiles(ImportFile.fromMultipartFiles(files), name, user, errorFileNames, () -> {});
+        addImportResult(model, errorFileNames);
+    }
+
+    /**
+     * Adds the names of the files per error and if the import succeeded to the model of the situation page,
+     * so the direct upload and the jobs show the same messages. The import only succeeded, if no file had an error.
+     * @param model
+     * @param errorFileNames names of the files per error
+     */
+    public void addImportResult(Model model, Map<String, List<String>> errorFileNames){
+        model.addAllAttributes(errorFileNames);
+        model.addAttribute("success", errorFileNames.isEmpty());
+    }
+
+    /**
+     * Writes the uploaded files into temporary files and starts their import into the current questionnaire of the federal state or ressort.
+     * @param files
+     * @param questionnaireId id of the questionnaire shown to the user
+     * @param name name of the federal state or ressort
+     * @param user
+     * @return the started job
+     * @throws EntityDoesNotExistException
+     * @throws AccessDeniedException
+     * @throws IOException if the uploaded files can't be read
+     * @throws ImportJobRejectedException if the user already waits for a job into the questionnaire or too many jobs are waiting
+     */
+    public QuestionnaireImportJob startImportJob(MultipartFile[] files, long questionnaireId, String name, User user)
+            throws EntityDoesNotExistException, AccessDeniedException, IOException, ImportJobRejectedException {
+        questionnaireService.checkAccessToQuestionnaire(questionnaireId, name, user);
+        // checked before writing the files, so rejected uploads aren't written
+        checkNoPendingJob(name, user);
+        // older autosaved changes must not overwrite the imported values
+        questionnaireAutosaveService.flush(questionnaireId);
+
+        List<ImportFile> importFiles = ImportFile.spoolMultipartFiles(files);
+        QuestionnaireImportJob job = new QuestionnaireImportJob(UUID.randomUUID().toString(), user.getUsername(), name, importFiles);
+        synchronized (jobs) {
+            try {
+                checkNoPendingJob(name, user);
+                executorService.submit(() -> runImportJob(job, user));
+            } catch (ImportJobRejectedException e) {
+                ImportFile.deleteSpooledFiles(importFiles);
+                throw e;
+            } catch (RejectedExecutionException e) {
+                ImportFile.deleteSpooledFiles(importFiles);
+                throw new ImportJobRejectedException("There are already " + MAX_WAITING_JOBS + " import jobs waiting.");
+            }
+            jobs.put(job.getId(), job);
+        }
+        return job;
+    }
+
+    private void checkNoPendingJob(String name, User user) throws ImportJobRejectedException {
+        for(QuestionnaireImportJob job: jobs.values()){
+            if(job.belongsTo(user, name) && !job.isEnded()){
+                throw new ImportJobRejectedException("The user " + user.getUsername() + " already waits for the import job " + job.getId() + ".");
+            }
+        }
+    }
+
+    /**
+     * Returns the import job with the given id, if it was started by the given user for the given federal state or ressort.
+     * @param id
+     * @param name
+     * @param user
+     * @return
+     * @throws EntityDoesNotExistException
+     */
+    public QuestionnaireImportJob getImportJob(String id, String name, User user) throws EntityDoesNotExistException {
+        QuestionnaireImportJob job = jobs.get(id);
+        if(job == null || !job.belongsTo(user, name)){
+            throw new EntityDoesNotExistException("There is no import job with the id " + id + ".");
+        }
+        return job;
+    }
+
+    private void runImportJob(QuestionnaireImportJob job, User user){
+        job.start();
+        try {
+            Map<String, List<String>> errorFileNames = new HashMap<>();
+            importFiles(job.getFiles(), job.getName(), user, errorFileNames, job::fileImported);
+            job.finish(errorFileNames);
+        } catch (AccessDeniedException | EntityDoesNotExistException | RuntimeException e) {
+            log.warn("The import job {} failed.", job.getId(), e);
+            job.fail();
+        }
+    }
+
+    /**
+     * Reads the files in parallel without a transaction and saves their values afterwards.
+     * @param files
+     * @param name name of the federal state or ressort
+     * @param user
+     * @param errorFileNames is filled with the names of the files per error, the errors are named like the model attributes of the situation page
+     * @param fileImportedCallback called after every imported file
+     * @throws AccessDeniedException
+     * @throws EntityDoesNotExistException if the questionnaire became part of a report while the files were read
+     */
+    private void importFiles(List<ImportFile> files, String name, User user, Map<String, List<String>> errorFileNames,
+                             Runnable fileImportedCallback) throws AccessDeniedException, EntityDoesNotExistException {
+        QuestionnaireImportService.PreparedImport preparedImport = questionnaireService.prepareImportFromFiles(name, user);
+        List<FileImportResult> fileImportResults = questionnaireImportService.importFiles(files, preparedImport, fileImportedCallback);
+        questionnaireService.saveImportResults(preparedImport.getQuestionnaireId(), fileImportResults, errorFileNames);
+    }
+
+    /**
+     * Removes the jobs which ended some time ago.
+     */
+    @Scheduled(fixedDelay = 60000)
+    public void removeExpiredJobs(){
+        long expirationTime = System.currentTimeMillis() - JOB_EXPIRATION_MILLIS;
+        jobs.values().removeIf(job -> job.isFinishedBefore(expirationTime));
+    }
+}
@@ -0,0 +1,357 @@
+package de.thb.kritis_elfe.service.questionnaire;
+
+import de.thb.kritis_elfe.configuration.KritisElfeReader;
+import de.thb.kritis_elfe.controller.form.FilledScenarioChange;
+import de.thb.kritis_elfe.entity.Branch;
+import de.thb.kritis_elfe.entity.Ressort;
+import de.thb.kritis_elfe.entity.questionnaire.BranchQuestionnaire;
+import de.thb.kritis_elfe.entity.questionnaire.FilledScenario;
+import de.thb.kritis_elfe.entity.questionnaire.Questionnaire;
+import de.thb.kritis_elfe.enums.ScenarioType;
+import de.thb.kritis_elfe.service.DocumentService;
+import de.thb.kritis_elfe.service.helper.word.WordDocumentReader;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the values of questionnaires from uploaded files. The files are read in parallel by a bounded thread pool,
+ * the results are returned in the order of the files, so later files overwrite the values of earlier ones.
+ */
+@Service
+public class QuestionnaireImportService {
+    private static final Pattern SCENARIO_VALUES_PATTERN = Pattern.compile("((☒|☐|T|£)\\s*){1,4}");
+    // checkboxes of the form fields of a docx, marked with their state by the WordDocumentReader
+    private static final Pattern FORM_FIELD_VALUES_PATTERN = Pattern.compile(
+            "([" + WordDocumentReader.UNCHECKED_BOX + WordDocumentReader.CHECKED_BOX + "]\\s*){1,4}");
+    private static final Pattern CHECKBOX_MARKERS_PATTERN = Pattern.compile(
+            "[" + WordDocumentReader.UNCHECKED_BOX + WordDocumentReader.CHECKED_BOX + "]");
+    private static final Pattern FORM_FIELD_MARKERS_PATTERN = Pattern.compile(
+            "[" + WordDocumentReader.UNCHECKED_BOX + "-" + WordDocumentReader.TEXT_FIELD_END + "]");
+
+    private final DocumentService documentService;
+    private final ImportCommentCleaner importCommentCleaner;
+    private final ExecutorService executorService;
+
+    // compiled patterns by the description of the scenario, a changed description gets a new pattern
+    private final ConcurrentHashMap<String, Pattern> scenarioPatterns = new ConcurrentHashMap<>();
+
+    public QuestionnaireImportService(DocumentService documentService, KritisElfeReader kritisElfeReader) {
+        this.documentService = documentService;
+        this.importCommentCleaner = new ImportCommentCleaner(kritisElfeReader.getImportCommentRemovals());
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        // reading and matching the files is cpu bound, so more threads than processors don't help
+        this.executorService = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+            Thread thread = new Thread(runnable, "questionnaire-import-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown(){
+        executorService.shutdown();
+    }
+
+    /**
+     * Prepares the import into the given questionnaire, so the files can be read without the entities and outside of the transaction.
+     * The questionnaire has to be loaded with its FilledScenarios and their scenarios, it isn't changed.
+     * @param questionnaire
+     * @param ressort ressort of the questionnaire, null for federal states
+     * @return
+     */
+    public PreparedImport prepareImport(Questionnaire questionnaire, Ressort ressort){
+        return new PreparedImport(questionnaire.getId(), createImportBranches(questionnaire, ressort));
+    }
+
+    /**
+     * Reads the values of the given files for the prepared questionnaire in parallel.
+     * @param files
+     * @param preparedImport
+     * @param fileImportedCallback called after every imported file, from the threads of the executor
+     * @return results in the order of the files
+     */
+    public List<FileImportResult> importFiles(List<ImportFile> files, PreparedImport preparedImport, Runnable fileImportedCallback) {
+        List<ImportBranch> importBranches = preparedImport.importBranches;
+
+        List<Future<FileImportResult>> futures = new ArrayList<>();
+        for(ImportFile file: files){
+            futures.add(executorService.submit(() -> {
+                FileImportResult result = importFile(file, importBranches);
+                fileImportedCallback.run();
+                return result;
+            }));
+        }
+
+        List<FileImportResult> results = new ArrayList<>();
+        try {
+            for(Future<FileImportResult> future: futures){
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("The import of the files was interrupted.", e);
+        } catch (ExecutionException e) {
+            if(e.getCause() instanceof RuntimeException){
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("The import of the files failed.", e.getCause());
+        } finally {
+            for(Future<FileImportResult> future: futures){
+                future.cancel(true);
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Copies everything needed to match the files from the entities, because they can't be used by other threads or after the transaction.
+     */
+    private List<ImportBranch> createImportBranches(Questionnaire questionnaire, Ressort ressort){
+        Set<Branch> ressortBranches = ressort == null ? null : new HashSet<>(ressort.getBranches());
+
+        List<ImportBranch> importBranches = new ArrayList<>();
+        for(BranchQuestionnaire branchQuestionnaire: questionnaire.getBranchQuestionnaires()){
+            List<ImportScenario> importScenarios = new ArrayList<>();
+            for(FilledScenario filledScenario: branchQuestionnaire.getFilledScenarios()){
+                importScenarios.add(new ImportScenario(filledScenario.getId(), getScenarioPattern(filledScenario.getScenario().getDescription()),
+                        filledScenario.getScenario().getScenarioType()));
+            }
+            importBranches.add(new ImportBranch(branchQuestionnaire.getBranch().getName(), branchQuestionnaire.getBranch().getSector().getName(),
+                    ressortBranches == null || ressortBranches.contains(branchQuestionnaire.getBranch()), importScenarios));
+        }
+        return importBranches;
+    }
+
+    private Pattern getScenarioPattern(String description){
+        return scenarioPatterns.computeIfAbsent(description, QuestionnaireImportService::createScenarioPattern);
+    }
+
+    /**
+     * Creates the pattern, which finds the description of the scenario in the text of a file,
+     * even if the text differs slightly in whitespaces, commas or the use of "sie" and "diese".
+     */
+    private static Pattern createScenarioPattern(String description){
+        String scenarioDescription = description.replaceAll("\r", "").replaceAll("\\s{2,3}", " ");
+
+        //slice empty start and end
+        scenarioDescription = scenarioDescription.replaceAll("(^\\s+)|(\\s+$)", "");
+        scenarioDescription = scenarioDescription
+                .replace("\\", "\\\\")
+                .replaceAll("\\(", "\\\\(")
+                .replaceAll("\\)", "\\\\)")
+                .replaceAll("\\[", "\\\\[")
+                .replaceAll("\\]", "\\\\]")
+                .replaceAll("\\{", "\\\\{")
+                .replaceAll("\\}", "\\\\}")
+                .replaceAll("\\*", "\\\\*")
+                .replaceAll("\\+", "\\\\+")
+                .replaceAll("\\?", "\\\\?")
+                .replaceAll("\\.","\\\\.")
+                .replaceAll("\\$","\\\\$")
+                .replaceAll("\\^", "\\\\^")
+                .replaceAll("\\&", "\\\\&")
+                .replaceAll("\\|", "\\\\|")
+                .replaceAll("sie", "(sie|diese)")
+                .replaceAll(",", ",?")
+                .replaceAll("\\s", "\\\\s{1,3}");
+        return Pattern.compile(scenarioDescription);
+    }
+
+    /**
+     * Extract all the informations from the given File.
+     * Runs in the threads of the executor, so only the snapshots of the BranchQuestionnaires are used.
+     * @param file
+     * @param importBranches
+     * @return found values and errors of the file
+     */
+    private FileImportResult importFile(ImportFile file, List<ImportBranch> importBranches) {//TODO mache übersichtlicher
+        FileImportResult result = new FileImportResult(file.getFileName());
+        String text = documentService.getTextFromFile(file.getContentType(), file.getContent(), ImportText.START);
+        if(text == null){
+            // only this file is left out, the other files are imported anyway
+            result.addError("unreadableFileNames");
+            return result;
+        }
+        ImportText importText = ImportText.parse(text);
+
+        if(importText != null) {
+            List<String> scenarioListFromText = importText.getScenarioBlocks();
+
+            if (importText.getBranchName() != null) {
+                String branchNameFromFile = FORM_FIELD_MARKERS_PATTERN.matcher(importText.getBranchName()).replaceAll("");
+                branchNameFromFile = branchNameFromFile.replaceAll("\\s", "").toLowerCase();
+                boolean branchFound = false;
+
+                for (ImportBranch importBranch : importBranches) {
+                    if (importBranch.belongsToRessort) {
+                        String newBranchNameFromFile = branchNameFromFile;
+                        String branchName = importBranch.branchName.replaceAll("\\s", "").toLowerCase();
+
+                        //delete sector from branch in file if its not part of the branch name
+                        String sectorName = importBranch.sectorName.replaceAll("\\s", "").toLowerCase();
+                        if(!branchName.contains(sectorName)) {
+                            newBranchNameFromFile = newBranchNameFromFile.replace(sectorName, "");
+                        }
+
+                        if (newBranchNameFromFile.contains(branchName)) {
+                            branchFound = true;
+                            for (ImportScenario importScenario : importBranch.scenarios) {
+                                boolean scenarioFound = false;
+                                FilledScenarioChange filledScenarioChange = new FilledScenarioChange(importScenario.filledScenarioId, null, null);
+                                for (String scenarioFromText : scenarioListFromText) {
+                                    Matcher matcher = importScenario.pattern.matcher(scenarioFromText);
+                                    if (matcher.find()) {
+                                        scenarioFound = true;
+                                        String scenarioFilling = scenarioFromText.substring(matcher.end());
+
+                                        if (importScenario.scenarioType == ScenarioType.AUSWAHL) {
+                                            // the checkbox glyphs are only guessed in blocks without checkbox form fields, like the ones of pdfs
+                                            if(CHECKBOX_MARKERS_PATTERN.matcher(scenarioFilling).find()){
+                                                matcher = FORM_FIELD_VALUES_PATTERN.matcher(scenarioFilling);
+                                            }else{
+                                                matcher = SCENARIO_VALUES_PATTERN.matcher(maskTextFields(scenarioFilling));
+                                            }
+
+                                            if(matcher.find()){
+                                                String values = matcher.group().replaceAll("\\s", "");
+                                                scenarioFilling = scenarioFilling.substring(matcher.end());
+
+                                                for (int i = values.length() - 1; i >= 0; i--) {
+                                                    char value = values.charAt(i);
+                                                    if (value == '☒' || value == 'T' || value == WordDocumentReader.CHECKED_BOX) {
+                                                        filledScenarioChange.setValue((short) (i + 1 + 4 - values.length()));//to match also ones with only 3 values
+                                                        break;
+                                                    }
+                                                    if (i == 0) {//not filled
+                                                        result.addError("noValuesGivenFileNames");
+                                                    }
+                                                }
+                                            }else{
+                                                result.addError("noValuesGivenFileNames");
+                                            }
+                                        }
+                                        //slice empty start and end
+                                        String comment = readComment(scenarioFilling).replaceAll("(^\\s+)|(\\s+$)", "");
+
+                                        comment = importCommentCleaner.clean(comment);
+                                        if(comment.length() > 10000){
+                                            comment = comment.substring(0,9999);
+                                            result.addError("commentToLongFileNames");
+                                        }
+                                        filledScenarioChange.setComment(comment.replaceAll("\t","\n"));
+                                        break;
+                                    }
+                                }
+                                //scenario not found
+                                if (!scenarioFound) {
+                                    result.addError("scenarioNotMatchingFileNames");
+                                }
+
+                                if (scenarioFound) {
+                                    result.getFilledScenarioChanges().add(filledScenarioChange);
+                                }
+
+                            }
+                            break;
+                        }
+                    } else {
+                        result.addError("branchNotForThisRessort");
+                    }
+                }
+
+                if (!branchFound) {
+                    result.addError("branchNotMatchingFileNames");
+                }
+            } else {
+                result.addError("branchStringMissingFileNames");
+            }
+        }else{
+            result.addError("sectorStringMissingFileNames");
+        }
+
+        return result;
+    }
+
+    /**
+     * Replaces the contents of the text fields of a docx by their start marker, so a "T" typed into them isn't taken as a checkbox.
+     * The length stays the same, so the positions found in the result are the ones of the given text.
+     */
+    private static String maskTextFields(String scenarioFilling){
+        int textFieldStart = scenarioFilling.indexOf(WordDocumentReader.TEXT_FIELD_START);
+        if(textFieldStart < 0){
+            return scenarioFilling;
+        }
+
+        char[] masked = scenarioFilling.toCharArray();
+        while(textFieldStart >= 0){
+            int textFieldEnd = scenarioFilling.indexOf(WordDocumentReader.TEXT_FIELD_END, textFieldStart);
+            if(textFieldEnd < 0){
+                textFieldEnd = scenarioFilling.length();
+            }
+            Arrays.fill(masked, textFieldStart, textFieldEnd, WordDocumentReader.TEXT_FIELD_START);
+            textFieldStart = scenarioFilling.indexOf(WordDocumentReader.TEXT_FIELD_START, textFieldEnd);
+        }
+        return new String(masked);
+    }
+
+    /**
+     * Returns the contents of the text fields of a docx, each in its own line, or otherwise the text without the markers of the form fields.
+     */
+    private static String readComment(String scenarioFilling){
+        int textFieldStart = scenarioFilling.indexOf(WordDocumentReader.TEXT_FIELD_START);
+        if(textFieldStart < 0){
+            return FORM_FIELD_MARKERS_PATTERN.matcher(scenarioFilling).replaceAll("");
+        }
+
+        StringBuilder comment = new StringBuilder();
+        while(textFieldStart >= 0){
+            int textFieldEnd = scenarioFilling.indexOf(WordDocumentReader.TEXT_FIELD_END, textFieldStart);
+            if(textFieldEnd < 0){
+                textFieldEnd = scenarioFilling.length();
+            }
+            String textField = FORM_FIELD_MARKERS_PATTERN.matcher(scenarioFilling.substring(textFieldStart + 1, textFieldEnd)).replaceAll("").strip();
+            if(!textField.isEmpty()){
+                if(comment.length() > 0){
+                    comment.append('\n');
+                }
+                comment.append(textField);
+            }
+            textFieldStart = scenarioFilling.indexOf(WordDocumentReader.TEXT_FIELD_START, textFieldEnd);
+        }
+        return comment.toString();
+    }
+
+    /**
+     * Questionnaire to import files into, copied from the entities.
+     */
+    @AllArgsConstructor
+    public static class PreparedImport {
+        @Getter
+        private final long questionnaireId;
+        private final List<ImportBranch> importBranches;
+    }
+
+    @AllArgsConstructor
+    private static class ImportBranch {
+        private final String branchName;
+        private final String sectorName;
+        private final boolean belongsToRessort;
+        private final List<ImportScenario> scenarios;
+    }
+
+    @AllArgsConstructor
+    private static class ImportScenario {
+        private final long filledScenarioId;
+        private final Pattern pattern;
+        private final ScenarioType scenarioType;
+    }
+}
@@ -0,0 +1,46 @@
+package de.thb.kritis_elfe.service.questionnaire;
+
+import de.thb.kritis_elfe.repository.questionnaire.BranchQuestionnaireRepository;
+import de.thb.kritis_elfe.repository.questionnaire.FilledScenarioRepository;
+import de.thb.kritis_elfe.repository.questionnaire.QuestionnaireRepository;
+import lombok.AllArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import javax.transaction.Transactional;
+import java.time.LocalDateTime;
+
+/**
+ * Adds the missing rows to all live questionnaires after the scenarios or the branches of the ressorts changed
+ * and deletes the rows of branches removed from a ressort,
+ * so this doesn't happen row by row on the next page view of every federal state and ressort.
+ * Uses the repositories directly, because the services of the questionnaires depend on the services triggering this.
+ */
+@Service
+@AllArgsConstructor
+public class QuestionnaireProvisioningService {
+    private final QuestionnaireRepository questionnaireRepository;
+    private final BranchQuestionnaireRepository branchQuestionnaireRepository;
+    private final FilledScenarioRepository filledScenarioRepository;
+
+    /**
+     * Adds the missing BranchQuestionnaires and FilledScenarios to all live questionnaires with a few set based statements.
+     * The changed questionnaires can't share the content of the last report anymore.
+     * Questionnaires which don't exist yet are still created on their first view.
+     * The rows of branches removed from a ressort are deleted, so they aren't part of the next report.
+     */
+    @Transactional
+    public void provisionLiveQuestionnaires(){
+        questionnaireRepository.updateChangedDateOfLiveRessortQuestionnairesWithRemovedBranches(LocalDateTime.now());
+        filledScenarioRepository.deleteFilledScenariosOfRemovedRessortBranches();
+        branchQuestionnaireRepository.deleteRemovedBranchQuestionnairesOfRessorts();
+
+        branchQuestionnaireRepository.insertMissingBranchQuestionnairesOfFederalStates();
+        branchQuestionnaireRepository.insertMissingBranchQuestionnairesOfRessorts();
+
+        // the new BranchQuestionnaires don't have FilledScenarios yet, so their questionnaires are marked as changed too
+        questionnaireRepository.updateChangedDateOfLiveQuestionnairesWithMissingFilledScenarios(LocalDateTime.now());
+        filledScenarioRepository.insertMissingFilledScenariosOfLiveQuestionnaires();
+
+        questionnaireRepository.updateBranchesVersionOfLiveRessortQuestionnaires();
+    }
+}
@@ -1,25 +1,24 @@
 package de.thb.kritis_elfe.service.questionnaire;
 
+import de.thb.kritis_elfe.controller.form.FilledScenarioChange;
+import de.thb.kritis_elfe.controller.form.QuestionnaireChangesForm;
 import de.thb.kritis_elfe.entity.*;
 import de.thb.kritis_elfe.entity.questionnaire.BranchQuestionnaire;
 import de.thb.kritis_elfe.entity.questionnaire.Questionnaire;
 import de.thb.kritis_elfe.entity.questionnaire.FilledScenario;
-import de.thb.kritis_elfe.enums.ScenarioType;
 import de.thb.kritis_elfe.repository.questionnaire.QuestionnaireRepository;
+import de.thb.kritis_elfe.repository.questionnaire.QuestionnaireStatus;
 import de.thb.kritis_elfe.service.*;
 import de.thb.kritis_elfe.service.Exceptions.AccessDeniedException;
 import de.thb.kritis_elfe.service.Exceptions.EntityDoesNotExistException;
+import de.thb.kritis_elfe.service.Exceptions.QuestionnaireChangedException;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import org.springframework.stereotype.Service;
-import org.springframework.ui.Model;
-import org.springframework.web.multipart.MultipartFile;
 
 import javax.transaction.Transactional;
 import java.time.LocalDateTime;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 @Service
 @AllArgsConstructor
@@ -35,7 +34,7 @@ public class QuestionnaireService {
     private final RessortService ressortService;
     private final UserService userService;
     private final RoleService roleService;
-    private final DocumentService documentService;
+    private final QuestionnaireImportService questionnaireImportService;
 
     public void save(Questionnaire questionnaire){questionnaireRepository.save(questionnaire);}
 
@@ -46,7 +45,7 @@ public class QuestionnaireService {
      * @return
      */
     public Questionnaire getQuestionnaireForFederalState(FederalState federalState) {
-        Questionnaire questionnaire = questionnaireRepository.findFirstByFederalStateOrderByIdDesc(federalState);
+        Questionnaire questionnaire = questionnaireRepository.findLiveQuestionnaireWithBranchesByFederalState(federalState);
 
         if (questionnaire == null){
             questionnaire = Questionnaire.builder().federalState(federalState).build();
@@ -59,41 +58,43 @@ public class QuestionnaireService {
 
     /**
      * Get the Questionnaire for the given ressort,
-     * Checks if all branches are already included and include them if not.
+     * Checks if all branches are already included and include them if not,
+     * this is only done if the branches of the ressort were changed since the last check.
      * Checks if all branches in the questionnaire are contained in the ressort and delete if not.
      * Creates a new one if not exist.
      * @param ressort
      * @return
      */
     public Questionnaire getQuestionnaireForRessort(Ressort ressort) {
-        Questionnaire questionnaire = questionnaireRepository.findFirstByRessortOrderByIdDesc(ressort);
-        List<Branch> branches;
+        Questionnaire questionnaire = questionnaireRepository.findLiveQuestionnaireWithBranchesByRessort(ressort);
+        Set<Branch> ressortBranches = new HashSet<>(ressort.getBranches());
         if (questionnaire == null){
-            questionnaire = Questionnaire.builder().ressort(ressort).build();
+            questionnaire = Questionnaire.builder().ressort(ressort).branchesVersion(ressort.getBranchesVersion()).build();
 
-             branches = ressort.getBranches();
-
-
-        }else{
-            branches = new ArrayList<>();
+            fillQuestionnaireFromBranches(ressort.getBranches(), questionnaire);
+        }else if(!Objects.equals(questionnaire.getBranchesVersion(), ressort.getBranchesVersion())){
             //check if every branch of the ressort is present and add if not
+            Set<Branch> questionnaireBranches = new HashSet<>();
+            for(BranchQuestionnaire branchQuestionnaire: questionnaire.getBranchQuestionnaires()){
+                questionnaireBranches.add(branchQuestionnaire.getBranch());
+            }
+            List<Branch> branches = new ArrayList<>();
             for(Branch branch: ressort.getBranches()){
-                boolean containsBranch = false;
-                for(BranchQuestionnaire branchQuestionnaire: questionnaire.getBranchQuestionnaires()){
-                    if(branchQuestionnaire.getBranch().equals(branch)){
-                        containsBranch = true;
-                        break;
-                    }
-                }
-                if(!containsBranch){
+                if(!questionnaireBranches.contains(branch)){
                     branches.add(branch);
                 }
             }
 
-            //check if every branch inside the questionnaire exist also in th ressort and delete if not
-            questionnaire.getBranchQuestionnaires().removeIf( branchQuestionnaire -> !ressort.getBranches().contains(branchQuestionnaire.getBranch()));
+            questionnaire.setBranchesVersion(ressort.getBranchesVersion());
+            if(branches.isEmpty()){
+                questionnaireRepository.save(questionnaire);
+            }else{
+                fillQuestionnaireFromBranches(branches, questionnaire);
+            }
         }
-        fillQuestionnaireFromBranches(branches, questionnaire);
+
+        //check if every branch inside the questionnaire exist also in th ressort and delete if not
+        questionnaire.getBranchQuestionnaires().removeIf( branchQuestionnaire -> !ressortBranches.contains(branchQuestionnaire.getBranch()));
 
         return questionnaire;
     }
@@ -128,6 +129,15 @@ public class QuestionnaireService {
             branchQuestionnaires.add(branchQuestionnaire);
 
         }
+        questionnaire.setDate(LocalDateTime.now());
+        if(!branchQuestionnaires.isEmpty()){
+            questionnaire.setUnchangedSinceReport(false);
+        }
+        questionnaireRepository.save(questionnaire);
+        branchQuestionnaireService.saveBranchQuestionnaires(branchQuestionnaires);
+        filledScenarioService.saveAllFilledScenarios(allFilledScenarios);
+
+        // added after saving, otherwise merging an existing questionnaire would replace the new BranchQuestionnaires by empty copies
         List<BranchQuestionnaire> newBranchQuestionnaires = questionnaire.getBranchQuestionnaires();
         if(newBranchQuestionnaires == null){
             newBranchQuestionnaires = new ArrayList<>();
@@ -135,22 +145,103 @@ public class QuestionnaireService {
 
         newBranchQuestionnaires.addAll(branchQuestionnaires);
         questionnaire.setBranchQuestionnaires(newBranchQuestionnaires);
-        questionnaire.setDate(LocalDateTime.now());
-        questionnaireRepository.save(questionnaire);
-        branchQuestionnaireService.saveBranchQuestionnaires(branchQuestionnaires);
-        filledScenarioService.saveAllFilledScenarios(allFilledScenarios);
     }
 
     /**
-     * Save all the Questionnaire parts after getting it from form.
-     * @param questionnaire
+     * Save the changed FilledScenarios of the questionnaire after getting them from form.
+     * Only the given FilledScenarios are written and only if their value or comment differs from the saved one.
+     * @param questionnaireChangesForm
      * @param name
      * @param user
      * @throws EntityDoesNotExistException
      * @throws AccessDeniedException
+     * @throws QuestionnaireChangedException if the questionnaire was changed since the given version
+     */
+    @Transactional
+    public void saveQuestionnaireChangesFromForm(QuestionnaireChangesForm questionnaireChangesForm, String name, User user)
+            throws EntityDoesNotExistException, AccessDeniedException, QuestionnaireChangedException {
+        long questionnaireId = questionnaireChangesForm.getId();
+        Ressort ressort = checkAccessToQuestionnaire(questionnaireId, name, user);
+
+        HashMap<Long, FilledScenarioChange> filledScenarioChanges = new HashMap<>();
+        for (FilledScenarioChange filledScenarioChange : questionnaireChangesForm.getFilledScenarios()) {
+            filledScenarioChanges.put(filledScenarioChange.getId(), filledScenarioChange);
+        }
+
+        List<FilledScenario> changedFilledScenarios = getChangedFilledScenarios(filledScenarioChanges, questionnaireId, ressort);
+        if(changedFilledScenarios.isEmpty()){
+            questionnaireRepository.updateQuestionnaireDateAndUpdatedFromId(LocalDateTime.now(), true, questionnaireId);
+            return;
+        }
+
+        // the version is checked and increased in one statement, so only one of two concurrent changes is saved
+        if(questionnaireRepository.updateChangedQuestionnaireDateAndUpdatedFromIdAndVersion(LocalDateTime.now(), true,
+                questionnaireId, questionnaireChangesForm.getVersion()) == 0){
+            throw new QuestionnaireChangedException("The questionnaire with the id " + questionnaireId + " was changed since the version " + questionnaireChangesForm.getVersion() + ".");
+        }
+
+        applyFilledScenarioChanges(changedFilledScenarios, filledScenarioChanges);
+    }
+
+    /**
+     * Save the autosaved changes of single FilledScenarios of the questionnaire.
+     * Date, updated and version of the questionnaire are set like after saving the form.
+     * Instead of the version of the whole questionnaire, every FilledScenario is compared with the saved state its change
+     * is based on, a FilledScenario changed by another user in between isn't overwritten but returned as conflict.
+     * The questionnaire is locked, so the comparison and the returned versions aren't mixed up with concurrent changes.
+     * @param questionnaireId
+     * @param filledScenarioChanges changes by the id of the FilledScenario
+     * @return the version of the questionnaire before and after the changes and the ids of the conflicting FilledScenarios
+     * @throws EntityDoesNotExistException if the questionnaire doesn't exist or is part of a report
      */
     @Transactional
-    public void saveQuestionnaireFromForm(Questionnaire questionnaire, String name, User user) throws EntityDoesNotExistException, AccessDeniedException {
+    public AutosavedVersion saveAutosavedFilledScenarioChanges(long questionnaireId, Map<Long, FilledScenarioChange> filledScenarioChanges)
+            throws EntityDoesNotExistException {
+        Questionnaire questionnaire = questionnaireRepository.findLockedById(questionnaireId);
+        if(questionnaire == null || questionnaire.getReport() != null){
+            throw new EntityDoesNotExistException("There is no live questionnaire with the id " + questionnaireId + ".");
+        }
+
+        long version = questionnaire.getVersion();
+        List<FilledScenario> changedFilledScenarios = new ArrayList<>();
+        List<Long> conflictingFilledScenarioIds = new ArrayList<>();
+        for(FilledScenario filledScenario: getChangedFilledScenarios(filledScenarioChanges, questionnaireId, questionnaire.getRessort())){
+            FilledScenarioChange filledScenarioChange = filledScenarioChanges.get(filledScenario.getId());
+            if((filledScenarioChange.getValue() != null && !Objects.equals(filledScenarioChange.getSavedValue(), filledScenario.getValue()))
+                    || !isSameComment(filledScenarioChange.getSavedComment(), filledScenario.getComment())){
+                conflictingFilledScenarioIds.add(filledScenario.getId());
+            }else{
+                changedFilledScenarios.add(filledScenario);
+            }
+        }
+        if(changedFilledScenarios.isEmpty()){
+            return new AutosavedVersion(version, version, conflictingFilledScenarioIds);
+        }
+
+        questionnaireRepository.updateChangedQuestionnaireDateAndUpdatedAndVersionFromId(LocalDateTime.now(), true, questionnaireId);
+        applyFilledScenarioChanges(changedFilledScenarios, filledScenarioChanges);
+        return new AutosavedVersion(version, version + 1, conflictingFilledScenarioIds);
+    }
+
+    /**
+     * Compares comments independent of their line breaks, the browser sends them as \r\n with the form but as \n with the autosave.
+     */
+    private boolean isSameComment(String comment, String otherComment){
+        return Objects.equals(comment == null ? null : comment.replace("\r\n", "\n"),
+                otherComment == null ? null : otherComment.replace("\r\n", "\n"));
+    }
+
+    /**
+     * Checks if the user has access to the federal state or ressort with the given name
+     * and if the questionnaire is the current questionnaire of it.
+     * @param questionnaireId
+     * @param name
+     * @param user
+     * @return the ressort with the given name or null for a federal state
+     * @throws EntityDoesNotExistException
+     * @throws AccessDeniedException
+     */
+    public Ressort checkAccessToQuestionnaire(long questionnaireId, String name, User user) throws EntityDoesNotExistException, AccessDeniedException {
         FederalState federalState = federalStateService.getFederalStateByName(name);
         Ressort ressort = null;
         if(federalState == null){
@@ -159,34 +250,61 @@ public class QuestionnaireService {
 
         userService.checkAuthorizationOfUserForFederalStateOrRessort(user, federalState, ressort);
 
-        if(federalState != null && !questionnaireRepository.existsByIdAndFederalState(questionnaire.getId(), federalState)) {
-            throw new EntityDoesNotExistException("There is no questionnaire with the id " + questionnaire.getId() + " and the federal state " + federalState.getName() + ".");
-        }else if(ressort != null && !questionnaireRepository.existsByIdAndRessort(questionnaire.getId(), ressort)) {
-            throw new EntityDoesNotExistException("There is no questionnaire with the id " + questionnaire.getId() + " and the ressort " + ressort.getName() + ".");
-        }else{
-            questionnaireRepository.updateQuestionnaireDateAndUpdatedFromId(LocalDateTime.now(), true, questionnaire.getId());
+        if(federalState != null && !questionnaireRepository.existsByIdAndFederalStateAndReportIsNull(questionnaireId, federalState)) {
+            throw new EntityDoesNotExistException("There is no questionnaire with the id " + questionnaireId + " and the federal state " + federalState.getName() + ".");
+        }else if(ressort != null && !questionnaireRepository.existsByIdAndRessortAndReportIsNull(questionnaireId, ressort)) {
+            throw new EntityDoesNotExistException("There is no questionnaire with the id " + questionnaireId + " and the ressort " + ressort.getName() + ".");
+        }
+        return ressort;
+    }
 
-            for (BranchQuestionnaire branchQuestionnaire : questionnaire.getBranchQuestionnaires()) {
-                if(ressort == null || ressort.getBranches().contains(branchQuestionnaire.getBranch())){
-                    for (FilledScenario filledScenario : branchQuestionnaire.getFilledScenarios()) {
-                        filledScenarioService.updateFilledScenarioValueAndCommentById(filledScenario.getValue(), filledScenario.getComment(), filledScenario.getId());
-                    }
-                }
+    /**
+     * Returns the FilledScenarios of the questionnaire, whose value or comment differs from the given changes.
+     * For a ressort only FilledScenarios of its branches are returned.
+     */
+    private List<FilledScenario> getChangedFilledScenarios(Map<Long, FilledScenarioChange> filledScenarioChanges, long questionnaireId, Ressort ressort){
+        List<FilledScenario> changedFilledScenarios = new ArrayList<>();
+        if(filledScenarioChanges.isEmpty()){
+            return changedFilledScenarios;
+        }
+
+        for (FilledScenario filledScenario : filledScenarioService.getFilledScenariosByIdsAndQuestionnaireId(filledScenarioChanges.keySet(), questionnaireId)) {
+            if(ressort != null && !ressort.getBranches().contains(filledScenario.getBranchQuestionnaire().getBranch())){
+                continue;
+            }
+
+            FilledScenarioChange filledScenarioChange = filledScenarioChanges.get(filledScenario.getId());
+            if((filledScenarioChange.getValue() != null && filledScenarioChange.getValue() != filledScenario.getValue())
+                    || !Objects.equals(filledScenarioChange.getComment(), filledScenario.getComment())){
+                changedFilledScenarios.add(filledScenario);
             }
         }
+        return changedFilledScenarios;
     }
 
     /**
-     * Save all the Questionnaire parts after extracting them from the files
-     * @param files
+     * Sets the changed values and comments, hibernate sends the updates as one jdbc batch on commit.
+     */
+    private void applyFilledScenarioChanges(List<FilledScenario> changedFilledScenarios, Map<Long, FilledScenarioChange> filledScenarioChanges){
+        for (FilledScenario filledScenario : changedFilledScenarios) {
+            FilledScenarioChange filledScenarioChange = filledScenarioChanges.get(filledScenario.getId());
+            if(filledScenarioChange.getValue() != null){
+                filledScenario.setValue(filledScenarioChange.getValue());
+            }
+            filledScenario.setComment(filledScenarioChange.getComment());
+        }
+    }
+
+    /**
+     * Prepares the import of files into the current questionnaire of the federal state or ressort with the given name.
+     * Only loads the questionnaire, the files are read afterwards without a transaction.
      * @param name
      * @param user
-     * @param model
      * @return
      * @throws AccessDeniedException
      */
     @Transactional
-    public Questionnaire saveQuestionnaireFromFiles(MultipartFile[] files, String name, User user, Model model) throws AccessDeniedException {
+    public QuestionnaireImportService.PreparedImport prepareImportFromFiles(String name, User user) throws AccessDeniedException {
         FederalState federalState = federalStateService.getFederalStateByName(name);
         Ressort ressort = null;
         if(federalState == null){
@@ -195,275 +313,202 @@ public class QuestionnaireService {
 
         userService.checkAuthorizationOfUserForFederalStateOrRessort(user, federalState, ressort);
 
-        model.addAttribute("success", true);
         Questionnaire questionnaire;
         if(federalState != null) {
             questionnaire = getQuestionnaireForFederalState(federalState);
         }else{
             questionnaire = getQuestionnaireForRessort(ressort);
         }
-        questionnaireRepository.updateQuestionnaireDateFromId(LocalDateTime.now(), questionnaire.getId());//TODO Also updating if saved from files?
-
-        for(MultipartFile file: files){
-            saveFilledScenariosFromFile(questionnaire, file, ressort, model);
-        }
-        return questionnaire;
+        branchQuestionnaireService.fetchFilledScenarios(questionnaire);
+        return questionnaireImportService.prepareImport(questionnaire, ressort);
     }
 
     /**
-     * Extract all the informations from the given File and save it.
-     * @param questionnaire
-     * @param file
-     * @param ressort
-     * @param model
+     * Save the values read from the files, the results are applied in the order of the files.
+     * @param questionnaireId
+     * @param fileImportResults
+     * @param errorFileNames is filled with the names of the files per error, the errors are named like the model attributes of the situation page
+     * @throws EntityDoesNotExistException if the questionnaire became part of a report while the files were read
      */
     @Transactional
-    protected void saveFilledScenariosFromFile(Questionnaire questionnaire, MultipartFile file, Ressort ressort, Model model) {//TODO mache übersichtlicher
-        String text = documentService.getTextFromFile(file);
-        int indexOfAppearance = text.indexOf("Fachlage");
-        if(indexOfAppearance < 0){
-            indexOfAppearance = text.indexOf("Sektor ");
+    public void saveImportResults(long questionnaireId, List<FileImportResult> fileImportResults, Map<String, List<String>> errorFileNames)
+            throws EntityDoesNotExistException {
+        Questionnaire questionnaire = questionnaireRepository.findLockedById(questionnaireId);
+        if(questionnaire == null || questionnaire.getReport() != null){
+            throw new EntityDoesNotExistException("There is no live questionnaire with the id " + questionnaireId + ".");
         }
+        questionnaireRepository.updateChangedQuestionnaireDateFromId(LocalDateTime.now(), questionnaireId);
 
-        if(indexOfAppearance > -1) {
-            text = text.substring(indexOfAppearance).replaceAll("\r", "");
-
-            String regex = "\n\\d+\\. (\\P{Cn})*?((\n\\d+\\. )|$)";
-            String newText = text;
-            Pattern pattern = Pattern.compile(regex);
-            Matcher matcher = pattern.matcher(newText);
-            List<String> scenarioListFromText = new ArrayList<>();
-
-
-            while (matcher.find()) {
-                String scenarioText = matcher.group();
-
-                if (matcher.end() != text.length() - 1) {
-                    scenarioText = scenarioText.replaceAll("\n\\d+\\. $", "");
-                    newText = newText.substring(matcher.start() + scenarioText.length());
-                    matcher = pattern.matcher(newText);
-                }
-                scenarioListFromText.add(scenarioText);
+        Set<Long> filledScenarioIds = new HashSet<>();
+        for(FileImportResult fileImportResult: fileImportResults){
+            for(FilledScenarioChange filledScenarioChange: fileImportResult.getFilledScenarioChanges()){
+                filledScenarioIds.add(filledScenarioChange.getId());
+            }
+        }
+        Map<Long, FilledScenario> filledScenarios = new HashMap<>();
+        if(!filledScenarioIds.isEmpty()){
+            for(FilledScenario filledScenario: filledScenarioService.getFilledScenariosByIdsAndQuestionnaireId(filledScenarioIds, questionnaireId)){
+                filledScenarios.put(filledScenario.getId(), filledScenario);
             }
+        }
 
-            //Branch is behind this combination
-            String combination = "Branche";
-            indexOfAppearance = text.indexOf(combination);
-
-
-            if (indexOfAppearance >= 0) {
-                //slice everything before the Branch
-                text = text.substring(indexOfAppearance);
-                indexOfAppearance = text.indexOf("\n");
-                String branchNameFromFile = text.substring(combination.length(), indexOfAppearance);
-                branchNameFromFile = branchNameFromFile.replaceAll("\\s", "").toLowerCase();
-                boolean branchFound = false;
-
-                for (BranchQuestionnaire branchQuestionnaire : questionnaire.getBranchQuestionnaires()) {
-                    if (ressort == null || ressort.getBranches().contains(branchQuestionnaire.getBranch())) {
-                        String newBranchNameFromFile = branchNameFromFile;
-                        String branchName = branchQuestionnaire.getBranch().getName().replaceAll("\\s", "").toLowerCase();
-
-                        //delete sector from branch in file if its not part of the branch name
-                        String sectorName = branchQuestionnaire.getBranch().getSector().getName().replaceAll("\\s", "").toLowerCase();
-                        if(!branchName.contains(sectorName)) {
-                            newBranchNameFromFile = newBranchNameFromFile.replace(sectorName, "");
-                        }
-
-                        if (newBranchNameFromFile.contains(branchName)) {
-                            branchFound = true;
-                            for (FilledScenario filledScenario : branchQuestionnaire.getFilledScenarios()) {
-                                String scenarioDescription = filledScenario.getScenario().getDescription().replaceAll("\r", "").replaceAll("\\s{2,3}", " ");
-
-                                //slice empty start and end
-                                scenarioDescription = scenarioDescription.replaceAll("(^\\s+)|(\\s+$)", "");
-                                scenarioDescription = scenarioDescription
-                                        .replace("\\", "\\\\")
-                                        .replaceAll("\\(", "\\\\(")
-                                        .replaceAll("\\)", "\\\\)")
-                                        .replaceAll("\\[", "\\\\[")
-                                        .replaceAll("\\]", "\\\\]")
-                                        .replaceAll("\\{", "\\\\{")
-                                        .replaceAll("\\}", "\\\\}")
-                                        .replaceAll("\\*", "\\\\*")
-                                        .replaceAll("\\+", "\\\\+")
-                                        .replaceAll("\\?", "\\\\?")
-                                        .replaceAll("\\.","\\\\.")
-                                        .replaceAll("\\$","\\\\$")
-                                        .replaceAll("\\^", "\\\\^")
-                                        .replaceAll("\\&", "\\\\&")
-                                        .replaceAll("\\|", "\\\\|")
-                                        .replaceAll("sie", "(sie|diese)")
-                                        .replaceAll(",", ",?")
-                                        .replaceAll("\\s", "\\\\s{1,3}");
-                                boolean scenarioFound = false;
-                                for (String scenarioFromText : scenarioListFromText) {
-                                    pattern = Pattern.compile(scenarioDescription);
-                                    matcher = pattern.matcher(scenarioFromText);
-                                    if (matcher.find()) {
-                                        scenarioFound = true;
-                                        String scenarioFilling = scenarioFromText.substring(matcher.end());
-
-                                        if (filledScenario.getScenario().getScenarioType() == ScenarioType.AUSWAHL) {
-                                            pattern = Pattern.compile("((☒|☐|T|£)\\s*){1,4}");
-                                            matcher = pattern.matcher(scenarioFilling);
-
-                                            if(matcher.find()){
-                                                String values = matcher.group().replaceAll("\\s", "");
-                                                scenarioFilling = scenarioFilling.substring(matcher.end());
-
-                                                for (int i = values.length() - 1; i >= 0; i--) {
-                                                    char value = values.charAt(i);
-                                                    if (value == '☒' || value == 'T') {
-                                                        filledScenario.setValue((short) (i + 1 + 4 - values.length()));//to match also ones with only 3 values
-                                                        break;
-                                                    }
-                                                    if (i == 0) {//not filled
-                                                        createModelListIfNotExistsAndInsertFilename(model, "noValuesGivenFileNames", file.getOriginalFilename());
-                                                    }
-                                                }
-                                            }else{
-                                                createModelListIfNotExistsAndInsertFilename(model, "noValuesGivenFileNames", file.getOriginalFilename());
-                                            }
-                                        }
-                                        //slice empty start and end
-                                        String comment = scenarioFilling.replaceAll("(^\\s+)|(\\s+$)", "");
-
-                                        List<String> replaceables = new ArrayList<>();
-                                        replaceables.add("\\s?keine\\s/\\s{1,2}gar\\s{1,2}nicht\\s{1,2}gering\\s{1,2}erheb(-\\s)?lic(\\s{0,3})h\\s{1,2}massiv\\sKonkretisierung\\s?");
-                                        replaceables.add("\\s{0,3}Lageprognose\\s/\\slängerfristige\\sPerspektive\\s\\(bitte\\sZeithorizont\\sder\\sAussage\\sim\\sFreitextfeld\\sspezifizieren\\)\\s{0,3}");
-                                        replaceables.add("\\s?!\\sVSA-Einstufung\\sauswählen\\s!\\s{0,3}");
-                                        replaceables.add("\\s?Gemeinsames\\s{1,2}Kompetenzzentrum\\s{1,2}Bevölkerungsschutz\\s+Seite\\s\\d+\\svon\\s\\d+\\sStand:\\sGemeinsames\\sLagebild\\sBevölkerungsschutz\\s–\\sMeldevorlage\\s[A-Za-z] -\\sKRITIS\\s?");
-                                        replaceables.add("\\s?keine\\s/\\s{1,2}gar\\snicht\\serheblic\\s?h\\s{1,2}kritisch\\s?/\\s{1,2}umfasse\\s?nd(\\s{1,2}Konkretisierung\\s{1,2}gering)?\\s?");
-                                        replaceables.add("\\s?Bitte\\snäher\\sausführen\\s\\(z.\\sB.\\sorganisatorisch,\\spersonell,\\slogistisch,\\smateriell,\\sgesetzgeberisch\\)\\s?");
-                                        replaceables.add("\\s?Bitte\\simmer\\sausfüllen,\\swenn\\snicht\\s„grün“\\sausgewählt(\\swurde\\.)?\\s?");
-                                        replaceables.add("\\s?((Personenbezogene Einschränkungen bzw. Personalausfälle)" +
-                                                "|(Technikeinschränkungen / technische Ausstattung)" +
-                                                "|(Technikeinschränkungen / technische Ausstattung)" +
-                                                "|(Gefährdung / Beeinträchtigung IT-Systeme \\(IT-Security\\))" +
-                                                "|(Einschränkungen bei Betriebsmitteln)|(Organisatorische Einwirkungen / Einschränkungen)" +
-                                                "|(\\(z. B. organisatorisch, personell, logistisch, materiell, gesetzgeberisch\\))"+
-                                                "|(Sonstiges und äußere Einflüsse))\\s-\\s?" );
-                                        for (String replaceable : replaceables) {
-                                            comment = comment.replaceAll(replaceable, "");
-                                        }
-                                        if(comment.length() > 10000){
-                                            comment = comment.substring(0,9999);
-                                            createModelListIfNotExistsAndInsertFilename(model, "commentToLongFileNames", file.getOriginalFilename());
-                                        }
-                                        filledScenario.setComment(comment.replaceAll("\t","\n"));
-                                        break;
-                                    }
-                                }
-                                //scenario not found
-                                if (!scenarioFound) {
-                                    createModelListIfNotExistsAndInsertFilename(model, "scenarioNotMatchingFileNames", file.getOriginalFilename());
-                                }
-
-                                filledScenarioService.saveFilledScenario(filledScenario);
-
-                            }
-                            break;
-                        }
-                    } else {
-                        createModelListIfNotExistsAndInsertFilename(model, "branchNotForThisRessort", file.getOriginalFilename());
-                    }
+        Set<FilledScenario> changedFilledScenarios = new LinkedHashSet<>();
+        for(FileImportResult fileImportResult: fileImportResults){
+            for(String error: fileImportResult.getErrors()){
+                addErrorFileName(errorFileNames, error, fileImportResult.getFileName());
+            }
+            for(FilledScenarioChange filledScenarioChange: fileImportResult.getFilledScenarioChanges()){
+                FilledScenario filledScenario = filledScenarios.get(filledScenarioChange.getId());
+                if(filledScenario == null){
+                    // removed from the questionnaire while the files were read
+                    continue;
                 }
-
-                if (!branchFound) {
-                    createModelListIfNotExistsAndInsertFilename(model, "branchNotMatchingFileNames", file.getOriginalFilename());
+                if(filledScenarioChange.getValue() != null){
+                    filledScenario.setValue(filledScenarioChange.getValue());
                 }
-            } else {
-                createModelListIfNotExistsAndInsertFilename(model, "branchStringMissingFileNames", file.getOriginalFilename());
+                filledScenario.setComment(filledScenarioChange.getComment());
+                changedFilledScenarios.add(filledScenario);
             }
-        }else{
-            createModelListIfNotExistsAndInsertFilename(model, "sectorStringMissingFileNames", file.getOriginalFilename());
         }
-
+        filledScenarioService.saveAllFilledScenarios(new ArrayList<>(changedFilledScenarios));
     }
 
     /**
-     * Creates a new List inside the Model with the given Name if not exist.
-     * And add the given filename to the list in every case.
-     * @param model
-     * @param attributeName
+     * Creates a new List for the given error if not exist.
+     * And add the given filename to the list if it isn't contained yet.
+     * @param errorFileNames
+     * @param error
      * @param filename
      */
-    private void createModelListIfNotExistsAndInsertFilename(Model model, String attributeName, String filename){
-        List<String> branchNotMatchingFileNames = (List<String>) model.getAttribute(attributeName);
-        if(branchNotMatchingFileNames == null){
-            branchNotMatchingFileNames = new ArrayList<>();
-        }
-        if(!branchNotMatchingFileNames.contains(filename)) {
-            branchNotMatchingFileNames.add(filename);
+    private void addErrorFileName(Map<String, List<String>> errorFileNames, String error, String filename){
+        List<String> fileNames = errorFileNames.computeIfAbsent(error, e -> new ArrayList<>());
+        if(!fileNames.contains(filename)) {
+            fileNames.add(filename);
         }
-        model.addAttribute(attributeName, branchNotMatchingFileNames);
-        model.addAttribute("success", false);
     }
 
     /**
-     * Go through all federalStates and ressorts copy all their questionnaires and assign the old ones to the report.
+     * Go through all federalStates and ressorts and persist their questionnaires for the report.
+     * Changed questionnaires are assigned to the report and copied, the copy is edited from now on.
+     * Unchanged questionnaires stay and the report gets a questionnaire sharing the content of the last report.
      * @param report
      */
+    @Transactional
     public void persistQuestionnairesForReport(Report report){
         List<Questionnaire> questionnaires = new ArrayList<>();
+        List<Questionnaire> previousReportQuestionnaires = new ArrayList<>();
         for(FederalState federalState: federalStateService.getAllFederalStates()){
-            Questionnaire questionnaire = getQuestionnaireForFederalState(federalState);
-            questionnaire.setReport(report);
-            questionnaires.add(questionnaire);
-
-            cloneQuestionnaire(questionnaire);
+            questionnaires.add(getQuestionnaireForFederalState(federalState));
+            previousReportQuestionnaires.add(questionnaireRepository.findFirstByFederalStateAndReportIsNotNullOrderByReportIdDesc(federalState));
         }
 
         for(Ressort ressort: ressortService.getAllRessorts()){
-            Questionnaire questionnaire = getQuestionnaireForRessort(ressort);
-            questionnaire.setReport(report);
-            questionnaires.add(questionnaire);
+            questionnaires.add(getQuestionnaireForRessort(ressort));
+            previousReportQuestionnaires.add(questionnaireRepository.findFirstByRessortAndReportIsNotNullOrderByReportIdDesc(ressort));
+        }
 
-            cloneQuestionnaire(questionnaire);
+        List<Questionnaire> changedQuestionnaires = new ArrayList<>();
+        List<Questionnaire> newQuestionnaires = new ArrayList<>();
+        List<Questionnaire> sharingQuestionnaires = new ArrayList<>();
+        for(int i = 0; i < questionnaires.size(); i++){
+            Questionnaire questionnaire = questionnaires.get(i);
+            Questionnaire previousReportQuestionnaire = previousReportQuestionnaires.get(i);
+
+            if(questionnaire.isUnchangedSinceReport() && previousReportQuestionnaire != null){
+                sharingQuestionnaires.add(Questionnaire.builder()
+                        .report(report)
+                        .federalState(questionnaire.getFederalState())
+                        .ressort(questionnaire.getRessort())
+                        .date(questionnaire.getDate())
+                        .updated(questionnaire.isUpdated())
+                        .sharedQuestionnaire(previousReportQuestionnaire.getContentQuestionnaire()).build());
+                questionnaire.setUpdated(false);
+            }else{
+                questionnaire.setReport(report);
+                changedQuestionnaires.add(questionnaire);
+                newQuestionnaires.add(Questionnaire.builder()
+                        .federalState(questionnaire.getFederalState())
+                        .ressort(questionnaire.getRessort())
+                        .date(questionnaire.getDate())
+                        .branchesVersion(questionnaire.getBranchesVersion())
+                        .unchangedSinceReport(true).build());
+            }
         }
 
         questionnaireRepository.saveAll(questionnaires);
+        questionnaireRepository.saveAll(sharingQuestionnaires);
+        questionnaireRepository.saveAll(newQuestionnaires);
+
+        for(int i = 0; i < changedQuestionnaires.size(); i++){
+            cloneQuestionnaireContent(changedQuestionnaires.get(i), newQuestionnaires.get(i));
+        }
     }
 
     /**
-     * Copies and saves all parts of the questionnaire.
-     * @param questionnaire
+     * Deletes the questionnaires of the report before the report itself is deleted.
+     * A questionnaire holding content shared by later reports hands its BranchQuestionnaires over to the sharing
+     * questionnaire of the oldest of them, which holds the content for the other sharing questionnaires from then on.
+     * The content of a questionnaire no one shares is deleted with it.
+     * The live questionnaires are marked as changed, because their content may equal only the content of the deleted report.
+     * @param report
      */
-    private void cloneQuestionnaire(Questionnaire questionnaire){
-        Questionnaire newQuestionnaire = Questionnaire.builder()
-                .federalState(questionnaire.getFederalState())
-                .ressort(questionnaire.getRessort())
-                .date(questionnaire.getDate()).build();
-
-        questionnaireRepository.save(newQuestionnaire);
-
-        for(BranchQuestionnaire branchQuestionnaire: questionnaire.getBranchQuestionnaires()){
-            BranchQuestionnaire newBranchQuestionnaire = BranchQuestionnaire.builder()
-                    .questionnaire(newQuestionnaire)
-                    .branch(branchQuestionnaire.getBranch()).build();
-            branchQuestionnaireService.saveBranchQuestionnaire(newBranchQuestionnaire);
-
-            for(FilledScenario filledScenario: branchQuestionnaire.getFilledScenarios()){
-                FilledScenario newFilledScenario = FilledScenario.builder()
-                        .branchQuestionnaire(newBranchQuestionnaire)
-                        .value(filledScenario.getValue())
-                        .comment(filledScenario.getComment())
-                        .scenario(filledScenario.getScenario()).build();
-
-                filledScenarioService.saveFilledScenario(newFilledScenario);
+    @Transactional
+    public void deleteQuestionnairesOfReport(Report report){
+        for(Questionnaire questionnaire: questionnaireRepository.findAllByReport(report)){
+            if(questionnaire.getSharedQuestionnaire() != null){
+                continue;
+            }
+
+            Questionnaire contentQuestionnaire = questionnaireRepository.findFirstBySharedQuestionnaireOrderByReportIdAsc(questionnaire);
+            if(contentQuestionnaire != null){
+                branchQuestionnaireService.moveBranchQuestionnaires(questionnaire, contentQuestionnaire);
+                questionnaireRepository.updateSharedQuestionnaire(questionnaire, contentQuestionnaire);
+                questionnaireRepository.removeSharedQuestionnaire(contentQuestionnaire);
+            }else{
+                filledScenarioService.deleteFilledScenarios(questionnaire);
+                branchQuestionnaireService.deleteBranchQuestionnaires(questionnaire);
             }
         }
+
+        questionnaireRepository.deleteByReport(report);
+        questionnaireRepository.updateUnchangedSinceReportOfLiveQuestionnaires();
+    }
+
+    /**
+     * Copies all BranchQuestionnaires and FilledScenarios of the questionnaire into the new questionnaire.
+     * @param questionnaire
+     * @param newQuestionnaire
+     */
+    private void cloneQuestionnaireContent(Questionnaire questionnaire, Questionnaire newQuestionnaire){
+        branchQuestionnaireService.copyBranchQuestionnaires(questionnaire, newQuestionnaire);
+        filledScenarioService.copyFilledScenarios(questionnaire, newQuestionnaire);
+    }
+
+    /**
+     * Returns the status of all live questionnaires, loaded once for all federal states and ressorts.
+     * @return
+     */
+    public List<QuestionnaireStatus> getLiveQuestionnaireStatuses(){
+        return questionnaireRepository.findLiveQuestionnaireStatuses();
     }
 
     /**
      * Returns all FederalStates which didn't have filled all Scenarios for every Branch.
+     * A FederalState without a questionnaire counts as not updated, the questionnaire isn't created here.
+     * @param questionnaireStatuses status of all live questionnaires
      * @return
      */
-    public List<FederalState> getFederalStatesWithNotUpdatedQuestionnaire(){
+    public List<FederalState> getFederalStatesWithNotUpdatedQuestionnaire(List<QuestionnaireStatus> questionnaireStatuses){
+        Set<Long> updatedFederalStateIds = new HashSet<>();
+        for(QuestionnaireStatus questionnaireStatus: questionnaireStatuses){
+            if(questionnaireStatus.getFederalStateId() != null && questionnaireStatus.isUpdated()){
+                updatedFederalStateIds.add(questionnaireStatus.getFederalStateId());
+            }
+        }
+
         List<FederalState> federalStates = new ArrayList<>();
         for(FederalState federalState: federalStateService.getAllFederalStates()){
-            if(!getQuestionnaireForFederalState(federalState).isUpdated()){
+            if(!updatedFederalStateIds.contains(federalState.getId())){
                 federalStates.add(federalState);
             }
         }
@@ -472,12 +517,21 @@ public class QuestionnaireService {
 
     /**
      * Returns all Ressorts which didn't have filled all Scenarios for every Branch.
+     * A Ressort without a questionnaire counts as not updated, the questionnaire isn't created here.
+     * @param questionnaireStatuses status of all live questionnaires
      * @return
      */
-    public List<Ressort> getRessortsWithNotUpdatedQuestionnaire(){
+    public List<Ressort> getRessortsWithNotUpdatedQuestionnaire(List<QuestionnaireStatus> questionnaireStatuses){
+        Set<Long> updatedRessortIds = new HashSet<>();
+        for(QuestionnaireStatus questionnaireStatus: questionnaireStatuses){
+            if(questionnaireStatus.getRessortId() != null && questionnaireStatus.isUpdated()){
+                updatedRessortIds.add(questionnaireStatus.getRessortId());
+            }
+        }
+
         List<Ressort> ressorts = new ArrayList<>();
         for(Ressort ressort: ressortService.getAllRessorts()){
-            if(!getQuestionnaireForRessort(ressort).isUpdated()){
+            if(!updatedRessortIds.contains(ressort.getId())){
                 ressorts.add(ressort);
             }
         }
@@ -501,13 +555,18 @@ public class QuestionnaireService {
 
         userService.checkAuthorizationOfUserForFederalStateOrRessort(user, federalState, ressort);
 
+        Questionnaire questionnaire;
         if (federalState != null) {
-            return getQuestionnaireForFederalState(federalState);
+            questionnaire = getQuestionnaireForFederalState(federalState);
         } else if (ressort != null) {
-            return getQuestionnaireForRessort(ressort);
+            questionnaire = getQuestionnaireForRessort(ressort);
         } else {
             throw new EntityDoesNotExistException("The Ressort or Federal State does not exist.");
         }
+
+        // everything shown in the form is loaded with two queries instead of one query per row
+        branchQuestionnaireService.fetchFilledScenarios(questionnaire);
+        return questionnaire;
     }
 
 }
\ No newline at end of file
@@ -16,8 +16,166 @@ $(document).ready(function (){
     for(let i = 0; i < sectorH2List.length; i++){
         setSectorColorByScenarios(sectorH2List[i]);
     }
+
+    //remember the saved state to send only the changed FilledScenarios
+    let filledScenarioDivList = $(".filled-scenario-div");
+    for(let i = 0; i < filledScenarioDivList.length; i++){
+        let select = filledScenarioDivList[i].querySelector(".value-select");
+        if(select != null){
+            filledScenarioDivList[i].dataset.saved_value = select.value;
+        }
+        filledScenarioDivList[i].dataset.saved_comment = filledScenarioDivList[i].querySelector(".comment-textarea").value;
+    }
+
+    //autosave every changed FilledScenario, while typing only after a short pause
+    $(".filled-scenario-div .value-select").on("change", function (){
+        autosaveFilledScenario(this.closest(".filled-scenario-div"));
+    });
+    $(".filled-scenario-div .comment-textarea").on("input", function (){
+        let filledScenarioDiv = this.closest(".filled-scenario-div");
+        clearTimeout(filledScenarioDiv.autosaveTimeout);
+        filledScenarioDiv.autosaveTimeout = setTimeout(function (){
+            autosaveFilledScenario(filledScenarioDiv);
+        }, 1000);
+    });
+
+    //import the uploaded files in the background and show the progress
+    $("#situation-file-form").on("submit", function (event){
+        event.preventDefault();
+        startImportJob(this);
+    });
 });
 
+function startImportJob(form){
+    let progressMessage = document.querySelector("#import-progress-message");
+    form.querySelector("button[type='submit']").disabled = true;
+    progressMessage.classList.remove("alert-danger");
+    progressMessage.classList.add("alert-info");
+    progressMessage.textContent = "Die Dateien werden hochgeladen.";
+    progressMessage.style.display = "block";
+
+    $.ajax({
+        url: form.dataset.import_url,
+        type: "POST",
+        processData: false,
+        contentType: false,
+        headers: {"X-CSRF-TOKEN": form.querySelector("input[name='_csrf']").value},
+        data: new FormData(form),
+        success: function (importJob){
+            showImportJobProgress(form, importJob);
+        },
+        error: function (xhr){
+            if(xhr.status == 429){
+                showImportJobError(form, "Es werden bereits Dateien ausgewertet. Bitte warten Sie, bis diese gespeichert sind, und versuchen Sie es dann erneut.");
+            }else{
+                showImportJobError(form);
+            }
+        }
+    });
+}
+
+function showImportJobProgress(form, importJob){
+    if(importJob.status == "FINISHED"){
+        window.location.href = form.dataset.page_url + "?import=" + importJob.id;
+        return;
+    }
+    if(importJob.status == "FAILED"){
+        showImportJobError(form);
+        return;
+    }
+
+    document.querySelector("#import-progress-message").textContent = "Die Dateien werden ausgewertet: "
+        + importJob.importedFileCount + " von " + importJob.fileCount + " Dateien.";
+
+    setTimeout(function (){
+        $.ajax({
+            url: form.dataset.import_status_url + importJob.id,
+            type: "GET",
+            success: function (currentImportJob){
+                showImportJobProgress(form, currentImportJob);
+            },
+            error: function (){
+                showImportJobError(form);
+            }
+        });
+    }, 1000);
+}
+
+function showImportJobError(form, message = "Die Dateien konnten nicht ausgewertet werden. Bitte versuchen Sie es erneut."){
+    let progressMessage = document.querySelector("#import-progress-message");
+    progressMessage.classList.remove("alert-info");
+    progressMessage.classList.add("alert-danger");
+    progressMessage.textContent = message;
+    form.querySelector("button[type='submit']").disabled = false;
+}
+
+function autosaveFilledScenario(filledScenarioDiv){
+    //only one change per FilledScenario is sent at a time, so every change is based on the saved state of the one before
+    if(filledScenarioDiv.autosaveRunning){
+        filledScenarioDiv.autosavePending = true;
+        return;
+    }
+
+    let form = document.querySelector("#situation-form");
+    let select = filledScenarioDiv.querySelector(".value-select");
+    let comment = filledScenarioDiv.querySelector(".comment-textarea").value;
+    let value = select != null ? select.value : null;
+
+    if(value == filledScenarioDiv.dataset.saved_value && comment == filledScenarioDiv.dataset.saved_comment){
+        return;
+    }
+
+    filledScenarioDiv.autosaveRunning = true;
+    $.ajax({
+        url: form.dataset.autosave_url,
+        type: "POST",
+        contentType: "application/json",
+        headers: {"X-CSRF-TOKEN": form.querySelector("input[name='_csrf']").value},
+        data: JSON.stringify({id: filledScenarioDiv.dataset.filled_scenario_id, value: value, comment: comment,
+            savedValue: filledScenarioDiv.dataset.saved_value, savedComment: filledScenarioDiv.dataset.saved_comment}),
+        success: function (autosavedVersion){
+            //another user changed the FilledScenario since the page was loaded, the change stays unsaved
+            if(autosavedVersion.conflictingFilledScenarioIds.includes(Number(filledScenarioDiv.dataset.filled_scenario_id))){
+                markAutosaveConflict(filledScenarioDiv, true);
+                return;
+            }
+
+            //the autosaved state is written and doesn't have to be sent again with the form
+            if(select != null){
+                filledScenarioDiv.dataset.saved_value = value;
+            }
+            filledScenarioDiv.dataset.saved_comment = comment;
+            markAutosaveConflict(filledScenarioDiv, false);
+
+            //the own changes don't outdate the form, but changes of other users in between still do
+            let versionInput = form.querySelector("input[name='version']");
+            if(versionInput.value == autosavedVersion.previousVersion){
+                versionInput.value = autosavedVersion.version;
+            }
+            document.querySelector("#autosave-error-message").style.display = "none";
+        },
+        error: function (){
+            //the change stays unsaved, so it is sent with the form
+            document.querySelector("#autosave-error-message").style.display = "block";
+        },
+        complete: function (){
+            filledScenarioDiv.autosaveRunning = false;
+            let autosavePending = filledScenarioDiv.autosavePending;
+            filledScenarioDiv.autosavePending = false;
+            if(autosavePending && !filledScenarioDiv.autosaveConflict){
+                autosaveFilledScenario(filledScenarioDiv);
+            }
+        }
+    });
+}
+
+function markAutosaveConflict(filledScenarioDiv, conflict){
+    filledScenarioDiv.autosaveConflict = conflict;
+    filledScenarioDiv.querySelectorAll(".value-select, .comment-textarea").forEach(input => input.classList.toggle("is-invalid", conflict));
+    let conflictMessage = document.querySelector("#autosave-conflict-message");
+    conflictMessage.style.display = document.querySelector("#situation-form .is-invalid") != null ? "block" : "none";
+}
+
 function onSelectionChange(select){
     noticeSelectValueChange(select);
     let branchDiv = select.closest(".branch-div")
@@ -98,18 +256,51 @@ function submitForm(){
         }
 
     }
-    console.log("hä");
     if(valueIsMissing){
-        console.log("hä2");
         if(confirm("Mindestens eines der Branchen wurde nicht komplett ausgefüllt. Die Gefahrenwerte sollten alle ausgefüllt sein. Wollen sie trotzdem speichern?")){
+            addChangedFilledScenarioInputs();
             $("#situation-form").submit()
             return true;
         }else{
             return false;
         }
     }else{
+        addChangedFilledScenarioInputs();
         $("#situation-form").submit()
         return true;
     }
 
+}
+
+function addChangedFilledScenarioInputs(){
+    let form = document.querySelector("#situation-form");
+    form.querySelectorAll(".filled-scenario-change-input").forEach(input => input.remove());
+
+    let filledScenarioDivList = $(".filled-scenario-div");
+    let changeIndex = 0;
+    for(let i = 0; i < filledScenarioDivList.length; i++){
+        let filledScenarioDiv = filledScenarioDivList[i];
+        let select = filledScenarioDiv.querySelector(".value-select");
+        let comment = filledScenarioDiv.querySelector(".comment-textarea").value;
+
+        let valueChanged = select != null && select.value != filledScenarioDiv.dataset.saved_value;
+        if(valueChanged || comment != filledScenarioDiv.dataset.saved_comment){
+            let prefix = "filledScenarios[" + changeIndex + "].";
+            addHiddenInput(form, prefix + "id", filledScenarioDiv.dataset.filled_scenario_id);
+            if(select != null){
+                addHiddenInput(form, prefix + "value", select.value);
+            }
+            addHiddenInput(form, prefix + "comment", comment);
+            changeIndex++;
+        }
+    }
+}
+
+function addHiddenInput(form, name, value){
+    let input = document.createElement("input");
+    input.type = "hidden";
+    input.classList.add("filled-scenario-change-input");
+    input.name = name;
+    input.value = value;
+    form.appendChild(input);
 }
\ No newline at end of file
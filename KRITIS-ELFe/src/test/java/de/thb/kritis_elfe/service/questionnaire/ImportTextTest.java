@@ -0,0 +1,96 @@
+package de.thb.kritis_elfe.service.questionnaire;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImportTextTest {
+
+    @Test
+    void splitsScenarioBlocksAtTheHeaders(){
+        ImportText importText = ImportText.parse("Kopf\nFachlage\nBranche Energie Elektrizität\n1. Erste Frage\n☐ ☒ ☐ ☐ Kommentar\n2. Zweite Frage\nText\n");
+
+        assertNotNull(importText);
+        assertEquals(List.of("\n1. Erste Frage\n☐ ☒ ☐ ☐ Kommentar", "\n2. Zweite Frage\nText"), importText.getScenarioBlocks());
+        assertEquals(" Energie Elektrizität", importText.getBranchName());
+    }
+
+    @Test
+    void removesCarriageReturns(){
+        ImportText importText = ImportText.parse("Fachlage\r\nBranche Gas\r\n1. Frage\r\nAntwort\r\n");
+
+        assertEquals(List.of("\n1. Frage\nAntwort"), importText.getScenarioBlocks());
+        assertEquals(" Gas", importText.getBranchName());
+    }
+
+    @Test
+    void onlyCutsAtNumbersFollowedByDotAndSpace(){
+        ImportText importText = ImportText.parse("Fachlage\n1. Frage\n1.5 Prozent\n. Punkt\nx2. Text\n3.Ohne Leerzeichen\n4. Zweite");
+
+        assertEquals(List.of("\n1. Frage\n1.5 Prozent\n. Punkt\nx2. Text\n3.Ohne Leerzeichen", "\n4. Zweite"), importText.getScenarioBlocks());
+    }
+
+    @Test
+    void startsAtSectorWithoutFachlage(){
+        ImportText importText = ImportText.parse("Branche Alt\nSektor Energie\nBranche Gas\n1. Frage");
+
+        assertEquals(List.of("\n1. Frage"), importText.getScenarioBlocks());
+        assertEquals(" Gas", importText.getBranchName());
+    }
+
+    @Test
+    void prefersFachlageToSector(){
+        ImportText importText = ImportText.parse("Sektor Energie\nBranche Alt\n1. Vorher\nFachlage\nBranche Neu\n1. Frage");
+
+        assertEquals(List.of("\n1. Frage"), importText.getScenarioBlocks());
+        assertEquals(" Neu", importText.getBranchName());
+    }
+
+    @Test
+    void returnsNullWithoutStart(){
+        assertNull(ImportText.parse("Kopf\nBranche Gas\n1. Frage"));
+    }
+
+    @Test
+    void hasNoBranchNameWithoutBranche(){
+        ImportText importText = ImportText.parse("Fachlage\n1. Frage");
+
+        assertNull(importText.getBranchName());
+        assertEquals(List.of("\n1. Frage"), importText.getScenarioBlocks());
+    }
+
+    // the old loop threw an exception, because it expected a line break behind the branch
+    @Test
+    void readsBrancheAtTheEndOfTheText(){
+        ImportText importText = ImportText.parse("Fachlage\n1. Frage\nBranche Gas");
+
+        assertEquals(" Gas", importText.getBranchName());
+        assertEquals(List.of("\n1. Frage\nBranche Gas"), importText.getScenarioBlocks());
+    }
+
+    // the old loop could merge a block with the header of the next one, now every header starts its own block
+    @Test
+    void keepsShortBlocksApart(){
+        ImportText importText = ImportText.parse("Fachlage\n1. a\n2. b\n3. c\n4. d");
+
+        assertEquals(List.of("\n1. a", "\n2. b", "\n3. c", "\n4. d"), importText.getScenarioBlocks());
+    }
+
+    // the old loop could lose the header of an empty last block
+    @Test
+    void keepsTheHeaderOfAnEmptyLastBlock(){
+        assertEquals(List.of("\n1. Frage", "\n2. "), ImportText.parse("Fachlage\n1. Frage\n2. ").getScenarioBlocks());
+        assertEquals(List.of("\n1. Frage", "\n2. "), ImportText.parse("Fachlage\n1. Frage\n2. \n").getScenarioBlocks());
+    }
+
+    // the old regular expression loop didn't end on this text
+    @Test
+    void endsOnAnEmptyHeaderAtTheEndOfTheText(){
+        ImportText importText = assertTimeoutPreemptively(Duration.ofSeconds(5), () -> ImportText.parse("Fachlage\n1. Frage\n12. "));
+
+        assertEquals(List.of("\n1. Frage", "\n12. "), importText.getScenarioBlocks());
+    }
+}